@@ -0,0 +1,243 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Runs the engine's scheduler through a scripted day on a virtual clock and reports what the day
+ * costs: wakeups, handler messages, frames, blits and time spent animating. Given a baseline
+ * report, it fails when any cost grows by more than the allowed share, as a gate for changes
+ * of the engine's scheduling.
+ * <p>
+ * A script line is a local time of day, an event and its arguments. A time range with a period
+ * in seconds repeats the event, # starts a comment:
+ * <pre>
+ * 07:00:00 visible on
+ * 07:00:00 ambient on
+ * 07:05:00-22:55:00/600 raise 5
+ * 12:00:00 timezone Europe/London
+ * 21:00:00 battery 15
+ * 22:00:00 power_save on
+ * 07:00:00 seconds on
+ * 07:00:00 transition full_cycle
+ * 07:00:00 display matrix
+ * 09:00:00 unread 3
+ * 09:00:00 peek on
+ * </pre>
+ * A raise leaves ambient mode for the given seconds.
+ * <p>
+ * Run with: ./gradlew :benchmark:simulateDay
+ */
+final class DaySimulation {
+
+    private static final String START_TIME_ZONE = "Europe/Kiev";
+    private static final int GROWTH_ALLOWED_PERCENT = 5;
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    private static final class Event {
+        final long mTimeMs;
+        final int mOrder;
+        final String[] mWords;
+
+        Event(long timeMs, int order, String[] words) {
+            mTimeMs = timeMs;
+            mOrder = order;
+            mWords = words;
+        }
+    }
+
+    private DaySimulation() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: DaySimulation <script> [baseline report]");
+            System.exit(2);
+        }
+
+        SimulatedEngine engine = simulate(args[0]);
+        long[] costs = new long[SimulatedEngine.Cost.NAMES.length];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = engine.getCost(i);
+            System.out.println(SimulatedEngine.Cost.NAMES[i] + ": " + costs[i]);
+        }
+
+        if (args.length > 1 && !checkBaseline(costs, args[1])) {
+            System.exit(1);
+        }
+    }
+
+    static SimulatedEngine simulate(String scriptPath) throws IOException {
+        TimeZone timeZone = TimeZone.getTimeZone(START_TIME_ZONE);
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(2018, Calendar.OCTOBER, 1);
+        long startMs = calendar.getTimeInMillis();
+
+        List<Event> events = readScript(scriptPath, startMs);
+        SimulatedEngine engine = new SimulatedEngine(startMs, timeZone, true);
+        for (Event event : events) {
+            engine.runUntil(event.mTimeMs);
+            apply(engine, event);
+        }
+        engine.runUntil(startMs + WallClock.MILLIS_PER_DAY);
+        return engine;
+    }
+
+    private static void apply(SimulatedEngine engine, Event event) {
+        String[] words = event.mWords;
+        switch (words[0]) {
+            case "visible":
+                engine.onVisibilityChanged(isOn(words[1]));
+                break;
+            case "ambient":
+                engine.onAmbientModeChanged(isOn(words[1]));
+                break;
+            case "timezone":
+                engine.onTimeZoneChanged(TimeZone.getTimeZone(words[1]));
+                break;
+            case "battery":
+                engine.setBatteryState(Integer.parseInt(words[1]), words.length > 2 && "charging".equals(words[2]));
+                break;
+            case "power_save":
+                engine.setPowerSaveMode(isOn(words[1]));
+                break;
+            case "seconds":
+                engine.setShowSeconds(isOn(words[1]));
+                break;
+            case "transition":
+                engine.setTransitionMode("full_cycle".equals(words[1])
+                        ? FaceConfig.TransitionMode.FULL_CYCLE : FaceConfig.TransitionMode.CHANGED_DOTS);
+                break;
+            case "display":
+                engine.setDisplayMode("matrix".equals(words[1])
+                        ? FaceConfig.DisplayMode.MATRIX : FaceConfig.DisplayMode.DIGITS);
+                break;
+            case "unread":
+                engine.onUnreadCountChanged(Integer.parseInt(words[1]));
+                break;
+            case "peek":
+                engine.onPeekCardChanged(isOn(words[1]));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown event " + words[0]);
+        }
+    }
+
+    private static boolean isOn(String word) {
+        return "on".equals(word);
+    }
+
+    /**
+     * Reads the script into events sorted by time, events at the same time keep the script order.
+     * Raises are expanded into a pair of ambient changes.
+     */
+    private static List<Event> readScript(String scriptPath, long startMs) throws IOException {
+        List<Event> events = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(scriptPath));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                String[] words = line.split("\\s+");
+                String[] eventWords = new String[words.length - 1];
+                System.arraycopy(words, 1, eventWords, 0, eventWords.length);
+
+                //HH:MM:SS or HH:MM:SS-HH:MM:SS/period
+                String time = words[0];
+                long firstMs;
+                long lastMs;
+                long periodMs;
+                int range = time.indexOf('-');
+                if (range >= 0) {
+                    int period = time.indexOf('/');
+                    firstMs = parseTimeOfDay(time.substring(0, range));
+                    lastMs = parseTimeOfDay(time.substring(range + 1, period));
+                    periodMs = Long.parseLong(time.substring(period + 1)) * MILLIS_PER_SECOND;
+                } else {
+                    firstMs = parseTimeOfDay(time);
+                    lastMs = firstMs;
+                    periodMs = 1;
+                }
+
+                for (long timeMs = firstMs; timeMs <= lastMs; timeMs += periodMs) {
+                    if ("raise".equals(eventWords[0])) {
+                        long durationMs = Long.parseLong(eventWords[1]) * MILLIS_PER_SECOND;
+                        events.add(new Event(startMs + timeMs, events.size(), new String[]{"ambient", "off"}));
+                        events.add(new Event(startMs + timeMs + durationMs, events.size(), new String[]{"ambient", "on"}));
+                    } else {
+                        events.add(new Event(startMs + timeMs, events.size(), eventWords));
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        Collections.sort(events, new Comparator<Event>() {
+            @Override
+            public int compare(Event a, Event b) {
+                if (a.mTimeMs != b.mTimeMs) {
+                    return a.mTimeMs < b.mTimeMs ? -1 : 1;
+                }
+                return a.mOrder - b.mOrder;
+            }
+        });
+        return events;
+    }
+
+    /**
+     * @return milliseconds from midnight, the offset of the start time zone is assumed
+     */
+    private static long parseTimeOfDay(String time) {
+        String[] parts = time.split(":");
+        return ((Integer.parseInt(parts[0]) * 60L + Integer.parseInt(parts[1])) * 60L
+                + Integer.parseInt(parts[2])) * MILLIS_PER_SECOND;
+    }
+
+    /**
+     * Compares the costs with a report written by an earlier run.
+     *
+     * @return false if a cost grew by more than the allowed share
+     */
+    private static boolean checkBaseline(long[] costs, String baselinePath) throws IOException {
+        boolean passed = true;
+        BufferedReader reader = new BufferedReader(new FileReader(baselinePath));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf(": ");
+                if (separator < 0) {
+                    continue;
+                }
+                String name = line.substring(0, separator);
+                long baseline = Long.parseLong(line.substring(separator + 2).trim());
+                for (int i = 0; i < costs.length; i++) {
+                    if (SimulatedEngine.Cost.NAMES[i].equals(name)
+                            && costs[i] * 100 > baseline * (100 + GROWTH_ALLOWED_PERCENT)) {
+                        System.err.println(name + " grew from " + baseline + " to " + costs[i]);
+                        passed = false;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return passed;
+    }
+}
@@ -0,0 +1,78 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Planning of every frame of the matrix scroll transitions, as blits of row runs and as blits
+ * of single dots. Scores are per scroll step.
+ */
+@State(Scope.Thread)
+public class DotMatrixBenchmark {
+
+    private static final int SCROLL_STEPS = 64;
+
+    @Param({"24", "32"})
+    public int size;
+
+    private final int[] mRunStarts = new int[DotMatrix.MAX_SIZE];
+    private final int[] mRunSprites = new int[DotMatrix.MAX_SIZE];
+    private DotMatrix mMatrix;
+    private DotMatrixLayout mLayout;
+
+    @Setup
+    public void setUp() {
+        mMatrix = new DotMatrix(size, size, Fixtures.FLIPDOT_STATE_ON);
+        mLayout = new DotMatrixLayout(size, size, 16);
+        mLayout.append(0, "12:34");
+        mLayout.append(1, "WED 17 OCT");
+        mLayout.append(2, "85%");
+        mLayout.append(3, "3 NEW");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCROLL_STEPS)
+    public int rowRunFrames() {
+        int blits = 0;
+        for (int step = 0; step < SCROLL_STEPS; step++) {
+            mLayout.render(mMatrix, step);
+            mMatrix.beginTransition();
+            for (int i = Fixtures.FLIPDOT_STATE_OFF + 1; i <= Fixtures.FLIPDOT_STATE_ON; i++) {
+                mMatrix.setAnimationIndex(i);
+                for (int row = 0; row < mMatrix.getRows(); row++) {
+                    if (mMatrix.isRowDirty(row)) {
+                        blits += mMatrix.collectRowRuns(row, mRunStarts, mRunSprites);
+                    }
+                }
+                mMatrix.commitRows();
+            }
+            mMatrix.finishTransition();
+        }
+        return blits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCROLL_STEPS)
+    public int perDotFrames() {
+        int sprites = 0;
+        for (int step = 0; step < SCROLL_STEPS; step++) {
+            mLayout.render(mMatrix, step);
+            mMatrix.beginTransition();
+            for (int i = Fixtures.FLIPDOT_STATE_OFF + 1; i <= Fixtures.FLIPDOT_STATE_ON; i++) {
+                mMatrix.setAnimationIndex(i);
+                for (int row = 0; row < mMatrix.getRows(); row++) {
+                    for (int column = 0; column < mMatrix.getColumns(); column++) {
+                        sprites += mMatrix.getSprite(column, row);
+                    }
+                }
+                mMatrix.commitRows();
+            }
+            mMatrix.finishTransition();
+        }
+        return sprites;
+    }
+}
@@ -0,0 +1,76 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Face layout and glyphs as set up by the watch face engine.
+ */
+final class Fixtures {
+
+    static final int MINUTES_PER_DAY = 24 * 60;
+
+    static final int FLIPDOT_STATE_OFF = 0;
+    static final int FLIPDOT_STATE_ON = 7;
+
+    static final int GRID_LEFT = -3;
+    static final int GRID_TOP = -5;
+    static final int GRID_COLUMNS = 7;
+    static final int GRID_ROWS = 11;
+    static final int GRID_SECONDS_ROW = 5;
+
+    private static final char[] SYMBOL_CHARS = "0123456789!".toCharArray();
+
+    private Fixtures() {
+    }
+
+    static int[] symbolMasks() {
+        int[] symbolMasks = new int[SYMBOL_CHARS.length];
+        for (int i = 0; i < SYMBOL_CHARS.length; i++) {
+            symbolMasks[i] = GlyphFont3x5.glyph(SYMBOL_CHARS[i]);
+        }
+        return symbolMasks;
+    }
+
+    static int[] digitDotOffsetsX() {
+        return new int[]{-3, 1, -3, 1};
+    }
+
+    static int[] digitDotOffsetsY() {
+        return new int[]{-5, -5, 1, 1};
+    }
+
+    /**
+     * @return digits shown at every minute of the day, on a 24 hour clock
+     */
+    static int[][] digitsOfDay() {
+        int[][] digits = new int[MINUTES_PER_DAY][TimeDigits.DIGITS_COUNT];
+        for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+            TimeDigits.fill(minuteOfDay / 60, minuteOfDay % 60, digits[minuteOfDay]);
+        }
+        return digits;
+    }
+
+    /**
+     * @return software renderer of a square screen, the sprites are translucent discs
+     */
+    static SoftwareDotRenderer softwareRenderer(int size, int blockSize) {
+        int[] background = new int[size * size];
+        for (int i = 0; i < background.length; i++) {
+            background[i] = 0xFF202020 + (i % size);
+        }
+
+        //translucent discs, brighter with every animation stage
+        int[][] flipdots = new int[FLIPDOT_STATE_ON + 1][blockSize * blockSize];
+        for (int stage = 0; stage < flipdots.length; stage++) {
+            for (int y = 0; y < blockSize; y++) {
+                for (int x = 0; x < blockSize; x++) {
+                    float dx = x + 0.5f - blockSize / 2f;
+                    float dy = y + 0.5f - blockSize / 2f;
+                    float distance = (float) Math.sqrt(dx * dx + dy * dy) / (blockSize / 2f);
+                    int alpha = distance >= 1 ? 0 : (int) (0xFF * Math.min(1f, 4 * (1 - distance)));
+                    flipdots[stage][y * blockSize + x] = (alpha << 24) | (stage * 0x20 << 8);
+                }
+            }
+        }
+
+        return new SoftwareDotRenderer(size, size, background, flipdots, blockSize, blockSize);
+    }
+}
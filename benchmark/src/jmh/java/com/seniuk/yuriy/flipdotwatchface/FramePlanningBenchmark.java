@@ -0,0 +1,97 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Planning of every frame of the minute transitions through a whole day, and of the ambient
+ * frame of every minute. Scores are per minute, of the seconds row per second.
+ */
+@State(Scope.Thread)
+public class FramePlanningBenchmark {
+
+    @State(Scope.Thread)
+    public static class Transition {
+        @Param({"CHANGED_DOTS", "FULL_CYCLE"})
+        public String mode;
+    }
+
+    private int[][] mDigitsOfDay;
+    private DirtyCellTracker mCells;
+    private FramePlanner mPlanner;
+
+    @Setup
+    public void setUp() {
+        mDigitsOfDay = Fixtures.digitsOfDay();
+        mCells = new DirtyCellTracker(Fixtures.GRID_COLUMNS, Fixtures.GRID_ROWS);
+        mPlanner = new FramePlanner(Fixtures.symbolMasks(), GlyphFont3x5.WIDTH, Fixtures.FLIPDOT_STATE_ON,
+                Fixtures.digitDotOffsetsX(), Fixtures.digitDotOffsetsY(), Fixtures.GRID_LEFT, Fixtures.GRID_TOP,
+                mCells);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.MINUTES_PER_DAY)
+    public int interactiveFrames(Transition transition) {
+        boolean isFullCycle = "FULL_CYCLE".equals(transition.mode);
+        int dirtyCells = 0;
+        for (int minuteOfDay = 0; minuteOfDay < Fixtures.MINUTES_PER_DAY; minuteOfDay++) {
+            int[] digitsOnDisplay = mDigitsOfDay[(minuteOfDay + Fixtures.MINUTES_PER_DAY - 1) % Fixtures.MINUTES_PER_DAY];
+            int[] digitsToDisplay = mDigitsOfDay[minuteOfDay];
+
+            if (isFullCycle) {
+                for (int i = Fixtures.FLIPDOT_STATE_ON - 1; i >= Fixtures.FLIPDOT_STATE_OFF; i--) {
+                    mPlanner.planFullCycleFrame(digitsOnDisplay, digitsToDisplay, i, true);
+                    dirtyCells += commitFrame();
+                }
+                for (int i = Fixtures.FLIPDOT_STATE_OFF + 1; i <= Fixtures.FLIPDOT_STATE_ON; i++) {
+                    mPlanner.planFullCycleFrame(digitsOnDisplay, digitsToDisplay, i, false);
+                    dirtyCells += commitFrame();
+                }
+            } else {
+                for (int i = Fixtures.FLIPDOT_STATE_OFF + 1; i <= Fixtures.FLIPDOT_STATE_ON; i++) {
+                    mPlanner.planChangedDotsFrame(digitsOnDisplay, digitsToDisplay, i);
+                    dirtyCells += commitFrame();
+                }
+            }
+        }
+        return dirtyCells;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.MINUTES_PER_DAY)
+    public void ambientFrames(Blackhole blackhole) {
+        for (int minuteOfDay = 0; minuteOfDay < Fixtures.MINUTES_PER_DAY; minuteOfDay++) {
+            mPlanner.planAmbientFrame(mDigitsOfDay[minuteOfDay]);
+            for (int i = 0; i < TimeDigits.DIGITS_COUNT; i++) {
+                blackhole.consume(mPlanner.getPlannedSymbol(i));
+            }
+        }
+    }
+
+    /**
+     * Frames of a minute with the seconds row and still digits, one per second.
+     */
+    @Benchmark
+    @OperationsPerInvocation(60)
+    public int secondFrames() {
+        int[] digits = mDigitsOfDay[0];
+        int dirtyCells = 0;
+        for (int seconds = 0; seconds < 60; seconds++) {
+            mPlanner.planChangedDotsFrame(digits, digits, Fixtures.FLIPDOT_STATE_ON);
+            SecondsRow.plan(mCells, Fixtures.GRID_SECONDS_ROW, seconds, Fixtures.FLIPDOT_STATE_ON);
+            dirtyCells += commitFrame();
+        }
+        return dirtyCells;
+    }
+
+    private int commitFrame() {
+        int dirtyCount = mCells.collectDirtyCells();
+        mCells.commit();
+        return dirtyCount;
+    }
+}
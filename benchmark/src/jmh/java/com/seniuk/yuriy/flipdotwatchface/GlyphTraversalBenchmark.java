@@ -0,0 +1,53 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Walking the lit dots of every face symbol, as done when interactive symbols are planned and
+ * when ambient symbols are rendered. Scores are per symbol.
+ */
+@State(Scope.Thread)
+public class GlyphTraversalBenchmark {
+
+    private static final int SYMBOLS_COUNT = 11;
+
+    private int[] mSymbolMasks;
+    private DirtyCellTracker mCells;
+    private FramePlanner mPlanner;
+
+    private final int[] mDotsX = new int[GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT];
+    private final int[] mDotsY = new int[GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT];
+
+    @Setup
+    public void setUp() {
+        mSymbolMasks = Fixtures.symbolMasks();
+        mCells = new DirtyCellTracker(GlyphFont3x5.WIDTH, GlyphFont3x5.HEIGHT);
+        mPlanner = new FramePlanner(mSymbolMasks, GlyphFont3x5.WIDTH, Fixtures.FLIPDOT_STATE_ON,
+                new int[]{0}, new int[]{0}, 0, 0, mCells);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS_COUNT)
+    public int interactiveSymbols() {
+        for (int symbol = 0; symbol < SYMBOLS_COUNT; symbol++) {
+            mPlanner.planSymbol(mSymbolMasks[symbol], Fixtures.FLIPDOT_STATE_ON, 0, 0);
+        }
+        return mCells.collectDirtyCells();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS_COUNT)
+    public void ambientSymbols(Blackhole blackhole) {
+        for (int symbol = 0; symbol < SYMBOLS_COUNT; symbol++) {
+            int dotsCount = FramePlanner.collectDots(mSymbolMasks[symbol], GlyphFont3x5.WIDTH, mDotsX, mDotsY);
+            blackhole.consume(dotsCount);
+        }
+        blackhole.consume(mDotsX);
+        blackhole.consume(mDotsY);
+    }
+}
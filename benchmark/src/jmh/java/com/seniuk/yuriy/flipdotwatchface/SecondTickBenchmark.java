@@ -0,0 +1,146 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * What a second of the seconds row costs with the face at rest, on the path of the engine: the
+ * MSG_SECOND_BOUNDARY wakeup of the scheduler, the frame planned and its dirty cells drawn by
+ * the software renderer, the changed span copied into the frame and the whole frame copied to
+ * the surface. An int[] copy stands in for the blits of the frame bitmap. Scores are per
+ * second, averaged over a minute with the :00 second that clears the row.
+ */
+@State(Scope.Thread)
+public class SecondTickBenchmark {
+
+    private static final int SIZE = 320;
+    private static final int BLOCK_SIZE = 20;
+    private static final int CENTER = SIZE / 2;
+    //10:15:00 UTC, seconds of a minute stay within it
+    private static final long MINUTE_START_MS = (10 * 60 + 15) * 60 * 1000L;
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    /**
+     * Handler and clocks of the engine, messages are delivered by the benchmark.
+     */
+    private static final class Looper implements FaceScheduler.Host, FaceScheduler.Clock {
+        long mNowMs = MINUTE_START_MS;
+        boolean mInvalidated;
+        //due time of every message, -1 when not sent
+        final long[] mDueMs = new long[FaceScheduler.MESSAGES.length];
+
+        @Override
+        public void invalidate() {
+            mInvalidated = true;
+        }
+
+        @Override
+        public void sendMessageDelayed(int what, long delayMs) {
+            mDueMs[what] = mNowMs + delayMs;
+        }
+
+        @Override
+        public void removeMessages(int what) {
+            mDueMs[what] = -1;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return mNowMs;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNowMs;
+        }
+    }
+
+    private Looper mLooper;
+    private FaceScheduler mScheduler;
+    private DotFrameDrawer mDrawer;
+    private SoftwareDotRenderer mRenderer;
+    //frame bitmap and surface of the engine
+    private int[] mFrame;
+    private int[] mSurface;
+
+    @Setup
+    public void setUp() {
+        mLooper = new Looper();
+        Arrays.fill(mLooper.mDueMs, -1);
+        mScheduler = new FaceScheduler(mLooper, mLooper, new WallClock(TimeZone.getTimeZone("UTC"), true),
+                Fixtures.FLIPDOT_STATE_ON + 1, Fixtures.symbolMasks(), Fixtures.digitDotOffsetsX(),
+                Fixtures.digitDotOffsetsY(), Fixtures.GRID_LEFT, Fixtures.GRID_TOP, Fixtures.GRID_COLUMNS,
+                Fixtures.GRID_ROWS, Fixtures.GRID_SECONDS_ROW, null);
+        mDrawer = new DotFrameDrawer(Fixtures.digitDotOffsetsX(), Fixtures.digitDotOffsetsY(),
+                Fixtures.GRID_LEFT, Fixtures.GRID_TOP);
+        mDrawer.setGeometry(CENTER, CENTER, BLOCK_SIZE, BLOCK_SIZE / 2f);
+        mRenderer = Fixtures.softwareRenderer(SIZE, BLOCK_SIZE);
+        mFrame = mRenderer.getPixels().clone();
+        mSurface = new int[SIZE * SIZE];
+
+        mScheduler.setSpritesLoaded(true);
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.onTimeChanged();
+        mScheduler.setShowSeconds(true);
+        //digits flip on, the face is at rest after that
+        while (mLooper.mDueMs[FaceScheduler.MSG_UPDATE_TIME] >= 0
+                || mLooper.mDueMs[FaceScheduler.MSG_ON_INTERACTIVE_MSG] >= 0) {
+            int what = mLooper.mDueMs[FaceScheduler.MSG_ON_INTERACTIVE_MSG] >= 0
+                    ? FaceScheduler.MSG_ON_INTERACTIVE_MSG : FaceScheduler.MSG_UPDATE_TIME;
+            mLooper.mNowMs = Math.max(mLooper.mNowMs, mLooper.mDueMs[what]);
+            mLooper.mDueMs[what] = -1;
+            mScheduler.handleMessage(what);
+            drawIfInvalidated();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SECONDS_PER_MINUTE)
+    public int secondTicks() {
+        for (int seconds = 0; seconds < SECONDS_PER_MINUTE; seconds++) {
+            mLooper.mNowMs = MINUTE_START_MS + seconds * 1000L;
+            mLooper.mDueMs[FaceScheduler.MSG_SECOND_BOUNDARY] = -1;
+            mScheduler.handleMessage(FaceScheduler.MSG_SECOND_BOUNDARY);
+            drawIfInvalidated();
+        }
+        return mSurface[CENTER * SIZE + CENTER];
+    }
+
+    /**
+     * Copy of the whole frame alone, the share of secondTicks that doesn't depend on the cells.
+     */
+    @Benchmark
+    public int frameCopy() {
+        System.arraycopy(mFrame, 0, mSurface, 0, mFrame.length);
+        return mSurface[CENTER * SIZE + CENTER];
+    }
+
+    /**
+     * onDraw of the engine with the software renderer.
+     */
+    private void drawIfInvalidated() {
+        if (!mLooper.mInvalidated) {
+            return;
+        }
+        mLooper.mInvalidated = false;
+
+        mScheduler.planInteractiveFrame();
+        mDrawer.drawDirtyDigits(mScheduler.getDirtyCells(), mScheduler.getFramePlanner(), null, null, mRenderer);
+        if (mRenderer.hasDirtyRect()) {
+            int left = mRenderer.getDirtyLeft();
+            int width = mRenderer.getDirtyRight() - left;
+            int[] pixels = mRenderer.getPixels();
+            for (int y = mRenderer.getDirtyTop(); y < mRenderer.getDirtyBottom(); y++) {
+                System.arraycopy(pixels, y * SIZE + left, mFrame, y * SIZE + left, width);
+            }
+            mRenderer.resetDirtyRect();
+        }
+        System.arraycopy(mFrame, 0, mSurface, 0, mFrame.length);
+    }
+}
@@ -0,0 +1,508 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+
+/**
+ * FlipdotEngine for the day simulation: the engine's {@link FaceScheduler} on a virtual clock,
+ * with a message queue in place of the handler. Frames are drawn by the engine's
+ * {@link DotFrameDrawer} into counters in place of the canvas, on a round screen of the
+ * reference size with the sprites and the symbol atlas loaded.
+ * <p>
+ * What is left of the engine here is what it does around the scheduler: the time tick, the
+ * display mode switch and the frame drawing.
+ */
+final class SimulatedEngine implements FaceScheduler.Host, FaceScheduler.Clock {
+
+    private static final int FLIPDOTS_COUNT = Fixtures.FLIPDOT_STATE_ON + 1;
+    private static final int DIGITS_COUNT = TimeDigits.DIGITS_COUNT;
+
+    //round screen the sprites are drawn for at their reference size
+    private static final int SCREEN_SIZE = 320;
+    private static final int FLIPDOT_SIZE = 20;
+
+    static final class Cost {
+        static final int WAKEUPS = 0;
+        static final int TIME_TICKS = 1;
+        static final int UPDATE_TIME_MESSAGES = 2;
+        static final int ON_INTERACTIVE_MESSAGES = 3;
+        static final int MINUTE_BOUNDARY_MESSAGES = 4;
+        static final int INVALIDATES = 5;
+        static final int INTERACTIVE_FRAMES = 6;
+        static final int AMBIENT_FRAMES = 7;
+        static final int SPRITE_BLITS = 8;
+        static final int BACKGROUND_BLITS = 9;
+        static final int AMBIENT_LAYER_BLITS = 10;
+        static final int TRANSITIONS = 11;
+        static final int ANIMATING_MS = 12;
+        static final int SECOND_BOUNDARY_MESSAGES = 13;
+        static final int ATLAS_BLITS = 14;
+        static final int MATRIX_RUN_BLITS = 15;
+        static final int FRAME_BLITS = 16;
+        static final int MATRIX_SCROLL_MESSAGES = 17;
+        static final int PEEK_CARD_BLITS = 18;
+        static final int AMBIENT_RECORDINGS = 19;
+
+        static final String[] NAMES = new String[]{
+                "wakeups", "time ticks", "update time messages", "on interactive messages",
+                "minute boundary messages", "invalidates", "interactive frames", "ambient frames",
+                "sprite blits", "background blits", "ambient layer blits",
+                "transitions", "animating ms", "second boundary messages",
+                "atlas blits", "matrix run blits", "frame blits", "matrix scroll messages", "peek card blits",
+                "ambient recordings"
+        };
+    }
+
+    private static final class Message implements Comparable<Message> {
+        final long mWhenMs;
+        final long mSequence;
+        final int mWhat;
+
+        Message(long whenMs, long sequence, int what) {
+            mWhenMs = whenMs;
+            mSequence = sequence;
+            mWhat = what;
+        }
+
+        @Override
+        public int compareTo(Message other) {
+            if (mWhenMs != other.mWhenMs) {
+                return mWhenMs < other.mWhenMs ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence > other.mSequence ? 1 : 0);
+        }
+    }
+
+    private final long[] mCosts = new long[Cost.NAMES.length];
+
+    //virtual wall time, the uptime clock runs from the start of the simulation
+    private final long mStartMs;
+    private long mNowMs;
+    private long mLastWakeupMs = -1;
+    //time ticks come every minute while visible
+    private long mNextTickMs = Long.MAX_VALUE;
+
+    private final PriorityQueue<Message> mMessages = new PriorityQueue<>();
+    private long mMessageSequence;
+    //delivery of the last animation step, -1 when the animation timer is stopped
+    private long mAnimatingSinceMs = -1;
+
+    private final WallClock mWallClock;
+    //transitions are counted as the engine's frame stats see them
+    private final FrameStats mFrameStats = new FrameStats(FaceScheduler.ONE_ANIMATION_STEP_RATE_MS);
+    private final FaceScheduler mScheduler;
+    private final DotFrameDrawer mFrameDrawer;
+    private final CellOcclusion mDigitOcclusion;
+    private final int mDigitsLeft;
+    private final int mDigitsTop;
+
+    private int mDisplayMode = FaceConfig.DEFAULT_DISPLAY_MODE;
+    private DotMatrix mDotMatrix;
+    private CellOcclusion mMatrixOcclusion;
+    private int mMatrixLeft;
+    private int mMatrixTop;
+    private int mMatrixDotSize;
+
+    private boolean mVisible;
+    //frame bitmap of the engine, released while hidden
+    private boolean mHasFrame;
+    private boolean mDrawPending;
+    private boolean mPeekCardShown;
+    //time on display of the recorded ambient digits, -1 when none are recorded
+    private int mAmbientFaceMinute = -1;
+
+    private final DotRenderer mFrameRenderer = new DotRenderer() {
+        @Override
+        public void setAmbientFlipdot(float radius, float cutRadius, float cutDeltaPos,
+                                      boolean burnInProtection, float burnInStrokeWidth) {
+        }
+
+        @Override
+        public void drawBackground(int left, int top, int right, int bottom) {
+            mCosts[Cost.BACKGROUND_BLITS]++;
+        }
+
+        @Override
+        public void drawFlipdot(int animationIndex, int left, int top) {
+            mCosts[Cost.SPRITE_BLITS]++;
+        }
+
+        @Override
+        public void drawAmbientFlipdot(int centerX, int centerY) {
+        }
+    };
+
+    private final DotFrameDrawer.SymbolRenderer mAtlasRenderer = new DotFrameDrawer.SymbolRenderer() {
+        @Override
+        public void drawSymbol(int symbol, int animationIndex, int left, int top, int right, int bottom) {
+            mCosts[Cost.ATLAS_BLITS]++;
+        }
+    };
+
+    //the panel under a row is restored like the background under a cell
+    private final DotFrameDrawer.RunRenderer mMatrixRunRenderer = new DotFrameDrawer.RunRenderer() {
+        @Override
+        public void drawPanel(int left, int top, int right, int bottom) {
+            mCosts[Cost.BACKGROUND_BLITS]++;
+        }
+
+        @Override
+        public void drawRun(int animationIndex, int left, int top, int count) {
+            mCosts[Cost.MATRIX_RUN_BLITS]++;
+        }
+    };
+
+    SimulatedEngine(long startMs, TimeZone timeZone, boolean is24Hour) {
+        mStartMs = startMs;
+        mNowMs = startMs;
+
+        mWallClock = new WallClock(timeZone, is24Hour);
+        int[] digitOffsetsX = Fixtures.digitDotOffsetsX();
+        int[] digitOffsetsY = Fixtures.digitDotOffsetsY();
+        mScheduler = new FaceScheduler(this, this, mWallClock, FLIPDOTS_COUNT, Fixtures.symbolMasks(),
+                digitOffsetsX, digitOffsetsY, Fixtures.GRID_LEFT, Fixtures.GRID_TOP,
+                Fixtures.GRID_COLUMNS, Fixtures.GRID_ROWS, Fixtures.GRID_SECONDS_ROW, mFrameStats);
+
+        float center = SCREEN_SIZE / 2f;
+        float xyOffset = FLIPDOT_SIZE / 2;
+        mFrameDrawer = new DotFrameDrawer(digitOffsetsX, digitOffsetsY, Fixtures.GRID_LEFT, Fixtures.GRID_TOP);
+        mFrameDrawer.setGeometry(center, center, FLIPDOT_SIZE, xyOffset);
+
+        mDigitsLeft = (int) (center + Fixtures.GRID_LEFT * FLIPDOT_SIZE - xyOffset);
+        mDigitsTop = (int) (center + Fixtures.GRID_TOP * FLIPDOT_SIZE - xyOffset);
+        mDigitOcclusion = new CellOcclusion(Fixtures.GRID_COLUMNS, Fixtures.GRID_ROWS);
+        mDigitOcclusion.setGrid(mDigitsLeft, mDigitsTop, FLIPDOT_SIZE);
+        mDigitOcclusion.setScreen(SCREEN_SIZE, SCREEN_SIZE, true, 0);
+        mDigitOcclusion.update();
+
+        //sprites are loaded by the time the face is first shown
+        applySprites();
+    }
+
+    long getCost(int cost) {
+        //transitions that ran to the end, one cut short by ambient mode is not counted
+        if (cost == Cost.TRANSITIONS) {
+            return mFrameStats.getFramesPerTransition().getCount();
+        }
+        return mCosts[cost];
+    }
+
+    long getNowMs() {
+        return mNowMs;
+    }
+
+    /**
+     * @return time of the next message or time tick, whichever is first
+     */
+    long getNextWakeupMs() {
+        long nextMs = mNextTickMs;
+        Message message = mMessages.peek();
+        if (message != null) {
+            nextMs = Math.min(nextMs, message.mWhenMs);
+        }
+        return nextMs;
+    }
+
+    /**
+     * Moves the clock forward, delivering the messages and time ticks due on the way.
+     */
+    void runUntil(long timeMs) {
+        while (true) {
+            long nextMs = getNextWakeupMs();
+            if (nextMs > timeMs) {
+                break;
+            }
+            mNowMs = Math.max(mNowMs, nextMs);
+            countWakeup();
+
+            Message message = mMessages.peek();
+            if (message != null && message.mWhenMs <= mNowMs) {
+                mMessages.poll();
+                handleMessage(message.mWhat);
+            } else {
+                mCosts[Cost.TIME_TICKS]++;
+                scheduleTimeTick();
+                mScheduler.onTimeChanged();
+            }
+            finishEvent();
+        }
+        mNowMs = Math.max(mNowMs, timeMs);
+    }
+
+    private void scheduleTimeTick() {
+        if (mVisible) {
+            mWallClock.update(mNowMs);
+            mNextTickMs = mWallClock.getNextMinuteMs();
+        } else {
+            mNextTickMs = Long.MAX_VALUE;
+        }
+    }
+
+    private void countWakeup() {
+        if (mNowMs != mLastWakeupMs) {
+            mCosts[Cost.WAKEUPS]++;
+            mLastWakeupMs = mNowMs;
+        }
+    }
+
+    //engine callbacks
+
+    void onVisibilityChanged(boolean visible) {
+        mVisible = visible;
+        if (!visible) {
+            mHasFrame = false;
+        }
+        scheduleTimeTick();
+        mScheduler.onVisibilityChanged(visible);
+        finishEvent();
+    }
+
+    void onAmbientModeChanged(boolean inAmbientMode) {
+        mAmbientFaceMinute = -1;
+        mScheduler.onAmbientModeChanged(inAmbientMode);
+        finishEvent();
+    }
+
+    void onTimeZoneChanged(TimeZone timeZone) {
+        //the receiver is registered while visible only
+        if (!mVisible) {
+            return;
+        }
+        mWallClock.setTimeZone(timeZone);
+        mScheduler.onTimeChanged();
+        finishEvent();
+    }
+
+    void onUnreadCountChanged(int count) {
+        mScheduler.onUnreadCountChanged(count);
+        finishEvent();
+    }
+
+    /**
+     * A peek card shown or hidden, it moves in a single step.
+     */
+    void onPeekCardChanged(boolean shown) {
+        mPeekCardShown = shown;
+        mScheduler.onPeekCardMoved();
+        finishEvent();
+    }
+
+    void setBatteryState(int levelPercent, boolean charging) {
+        mScheduler.setBatteryState(levelPercent, charging);
+    }
+
+    void setPowerSaveMode(boolean powerSaveMode) {
+        mScheduler.setPowerSaveMode(powerSaveMode);
+    }
+
+    void setShowSeconds(boolean showSeconds) {
+        mScheduler.setShowSeconds(showSeconds);
+        finishEvent();
+    }
+
+    void setTransitionMode(int transitionMode) {
+        mScheduler.setTransitionMode(transitionMode);
+        finishEvent();
+    }
+
+    /**
+     * Switches between the digits and the matrix as the engine does, the frame is rebuilt and
+     * the new face flips on.
+     */
+    void setDisplayMode(int displayMode) {
+        if (displayMode == mDisplayMode) {
+            return;
+        }
+        mDisplayMode = displayMode;
+        mScheduler.clearDisplay();
+        applySprites();
+        if (mDisplayMode == FaceConfig.DisplayMode.DIGITS) {
+            mScheduler.startTransition();
+        }
+        finishEvent();
+    }
+
+    private void applySprites() {
+        mHasFrame = false;
+        mScheduler.getDirtyCells().invalidateAll();
+        if (mDisplayMode == FaceConfig.DisplayMode.MATRIX) {
+            int columns = FaceScheduler.MATRIX_COLUMNS;
+            mMatrixDotSize = SCREEN_SIZE / columns;
+            int rows = Math.min(SCREEN_SIZE / mMatrixDotSize, DotMatrix.MAX_SIZE);
+            mMatrixLeft = (SCREEN_SIZE - columns * mMatrixDotSize) / 2;
+            mMatrixTop = (SCREEN_SIZE - rows * mMatrixDotSize) / 2;
+
+            mDotMatrix = new DotMatrix(columns, rows, Fixtures.FLIPDOT_STATE_ON);
+            mMatrixOcclusion = new CellOcclusion(columns, rows);
+            mMatrixOcclusion.setGrid(mMatrixLeft, mMatrixTop, mMatrixDotSize);
+            mMatrixOcclusion.setScreen(SCREEN_SIZE, SCREEN_SIZE, true, 0);
+            mMatrixOcclusion.update();
+            mScheduler.setDotMatrix(mDotMatrix,
+                    new DotMatrixLayout(columns, rows, FaceScheduler.MATRIX_LINE_LENGTH));
+        } else {
+            mDotMatrix = null;
+            mMatrixOcclusion = null;
+            mScheduler.setDotMatrix(null, null);
+        }
+        mScheduler.setSpritesLoaded(true);
+        invalidate();
+    }
+
+    /**
+     * Background and panel drawn into a new frame bitmap, every cell is drawn over them.
+     */
+    private void createFrame() {
+        mHasFrame = true;
+        mCosts[Cost.BACKGROUND_BLITS]++;
+        mScheduler.getDirtyCells().invalidateAll();
+        if (mDotMatrix != null) {
+            mCosts[Cost.BACKGROUND_BLITS]++;
+            mDotMatrix.invalidateAll();
+        }
+    }
+
+    //handler
+
+    @Override
+    public void sendMessageDelayed(int what, long delayMs) {
+        mMessages.add(new Message(mNowMs + delayMs, mMessageSequence++, what));
+    }
+
+    @Override
+    public void removeMessages(int what) {
+        for (Iterator<Message> it = mMessages.iterator(); it.hasNext(); ) {
+            if (it.next().mWhat == what) {
+                it.remove();
+            }
+        }
+    }
+
+    private boolean hasMessage(int what) {
+        for (Message message : mMessages) {
+            if (message.mWhat == what) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handleMessage(int what) {
+        switch (what) {
+            case FaceScheduler.MSG_ON_INTERACTIVE_MSG:
+                mCosts[Cost.ON_INTERACTIVE_MESSAGES]++;
+                break;
+            case FaceScheduler.MSG_UPDATE_TIME:
+                mCosts[Cost.UPDATE_TIME_MESSAGES]++;
+                if (mAnimatingSinceMs >= 0) {
+                    mCosts[Cost.ANIMATING_MS] += mNowMs - mAnimatingSinceMs;
+                }
+                break;
+            case FaceScheduler.MSG_MINUTE_BOUNDARY:
+                mCosts[Cost.MINUTE_BOUNDARY_MESSAGES]++;
+                break;
+            case FaceScheduler.MSG_SECOND_BOUNDARY:
+                mCosts[Cost.SECOND_BOUNDARY_MESSAGES]++;
+                break;
+            case FaceScheduler.MSG_MATRIX_SCROLL:
+                mCosts[Cost.MATRIX_SCROLL_MESSAGES]++;
+                break;
+        }
+        mScheduler.handleMessage(what);
+
+        //animation timer rescheduled itself for the next step
+        if (what == FaceScheduler.MSG_UPDATE_TIME) {
+            mAnimatingSinceMs = mNowMs;
+        }
+    }
+
+    //clock
+
+    @Override
+    public long uptimeMillis() {
+        return mNowMs - mStartMs;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return mNowMs;
+    }
+
+    //drawing
+
+    @Override
+    public void invalidate() {
+        mCosts[Cost.INVALIDATES]++;
+        mDrawPending = true;
+    }
+
+    /**
+     * Called once the engine is done with a callback or a message.
+     */
+    private void finishEvent() {
+        if (!hasMessage(FaceScheduler.MSG_UPDATE_TIME)) {
+            mAnimatingSinceMs = -1;
+        }
+        drawIfPending();
+    }
+
+    /**
+     * Frames requested by invalidate() before the next vsync are drawn once, not at all while
+     * the face isn't visible.
+     */
+    private void drawIfPending() {
+        if (!mDrawPending || !mVisible) {
+            return;
+        }
+        mDrawPending = false;
+
+        if (!mScheduler.isAmbient()) {
+            mCosts[Cost.INTERACTIVE_FRAMES]++;
+            if (!mHasFrame) {
+                createFrame();
+            }
+            mScheduler.planInteractiveFrame();
+            if (mDotMatrix != null) {
+                mFrameDrawer.drawDirtyRows(mDotMatrix, mMatrixOcclusion, mMatrixLeft, mMatrixTop, mMatrixDotSize,
+                        mMatrixRunRenderer);
+            } else {
+                CellOcclusion occlusion = mDigitOcclusion.hasHiddenCells() ? mDigitOcclusion : null;
+                mFrameDrawer.drawDirtyDigits(mScheduler.getDirtyCells(), mScheduler.getFramePlanner(),
+                        occlusion, mAtlasRenderer, mFrameRenderer);
+            }
+            //frame bitmap onto the surface
+            mCosts[Cost.FRAME_BLITS]++;
+        } else {
+            mCosts[Cost.AMBIENT_FRAMES]++;
+            //a moved card replays the recorded digits
+            int minute = mScheduler.getMinuteOfDay();
+            if (mAmbientFaceMinute != minute) {
+                recordAmbientDigits();
+                mAmbientFaceMinute = minute;
+            }
+            if (mPeekCardShown) {
+                mCosts[Cost.PEEK_CARD_BLITS]++;
+            }
+        }
+    }
+
+    /**
+     * Ambient digits recorded into a picture, a layer blit per digit.
+     */
+    private void recordAmbientDigits() {
+        mCosts[Cost.AMBIENT_RECORDINGS]++;
+        if (mScheduler.getCurrentAnimationIndex() != Fixtures.FLIPDOT_STATE_OFF) {
+            int width = GlyphFont3x5.WIDTH * FLIPDOT_SIZE;
+            int height = GlyphFont3x5.HEIGHT * FLIPDOT_SIZE;
+            int[] digitOffsetsX = Fixtures.digitDotOffsetsX();
+            int[] digitOffsetsY = Fixtures.digitDotOffsetsY();
+            for (int i = 0; i < DIGITS_COUNT; i++) {
+                int xPos = mDigitsLeft + (digitOffsetsX[i] - Fixtures.GRID_LEFT) * FLIPDOT_SIZE;
+                int yPos = mDigitsTop + (digitOffsetsY[i] - Fixtures.GRID_TOP) * FLIPDOT_SIZE;
+                if (!mDigitOcclusion.isRectHidden(xPos, yPos, xPos + width, yPos + height)) {
+                    mCosts[Cost.AMBIENT_LAYER_BLITS]++;
+                }
+            }
+        }
+    }
+}
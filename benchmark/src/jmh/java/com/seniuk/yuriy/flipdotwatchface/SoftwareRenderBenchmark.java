@@ -0,0 +1,96 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Rasterizing the minute transitions and the ambient frames of a whole day into the pixel
+ * buffer of the software renderer, at the 320x320 size of the face assets. Scores are per
+ * minute.
+ */
+@State(Scope.Thread)
+public class SoftwareRenderBenchmark {
+
+    private static final int SIZE = 320;
+    private static final int BLOCK_SIZE = 20;
+    private static final int CENTER = SIZE / 2;
+
+    private int[][] mDigitsOfDay;
+    private int[] mSymbolMasks;
+    private DirtyCellTracker mCells;
+    private FramePlanner mPlanner;
+    private SoftwareDotRenderer mRenderer;
+
+    private final int[] mDotsX = new int[GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT];
+    private final int[] mDotsY = new int[GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT];
+
+    @Setup
+    public void setUp() {
+        mDigitsOfDay = Fixtures.digitsOfDay();
+        mSymbolMasks = Fixtures.symbolMasks();
+        mCells = new DirtyCellTracker(Fixtures.GRID_COLUMNS, Fixtures.GRID_ROWS);
+        mPlanner = new FramePlanner(mSymbolMasks, GlyphFont3x5.WIDTH, Fixtures.FLIPDOT_STATE_ON,
+                Fixtures.digitDotOffsetsX(), Fixtures.digitDotOffsetsY(), Fixtures.GRID_LEFT, Fixtures.GRID_TOP,
+                mCells);
+
+        mRenderer = Fixtures.softwareRenderer(SIZE, BLOCK_SIZE);
+        mRenderer.setAmbientFlipdot((BLOCK_SIZE - 2) / 2, (BLOCK_SIZE - 2) / 6f,
+                (float) (Math.sin(Math.toRadians(45)) * (BLOCK_SIZE - 2) / 2), false, 3f);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.MINUTES_PER_DAY)
+    public int interactiveTransitions() {
+        for (int minuteOfDay = 0; minuteOfDay < Fixtures.MINUTES_PER_DAY; minuteOfDay++) {
+            int[] digitsOnDisplay = mDigitsOfDay[(minuteOfDay + Fixtures.MINUTES_PER_DAY - 1) % Fixtures.MINUTES_PER_DAY];
+            int[] digitsToDisplay = mDigitsOfDay[minuteOfDay];
+
+            for (int i = Fixtures.FLIPDOT_STATE_OFF + 1; i <= Fixtures.FLIPDOT_STATE_ON; i++) {
+                mPlanner.planChangedDotsFrame(digitsOnDisplay, digitsToDisplay, i);
+                drawDirtyCells();
+            }
+        }
+        return mRenderer.getPixels()[CENTER * SIZE + CENTER];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.MINUTES_PER_DAY)
+    public int ambientFrames() {
+        int[] offsetsX = Fixtures.digitDotOffsetsX();
+        int[] offsetsY = Fixtures.digitDotOffsetsY();
+        for (int minuteOfDay = 0; minuteOfDay < Fixtures.MINUTES_PER_DAY; minuteOfDay++) {
+            mPlanner.planAmbientFrame(mDigitsOfDay[minuteOfDay]);
+            mRenderer.clear(0xFF000000);
+            for (int digit = 0; digit < TimeDigits.DIGITS_COUNT; digit++) {
+                int symbolMask = mSymbolMasks[mPlanner.getPlannedSymbol(digit)];
+                int dotsCount = FramePlanner.collectDots(symbolMask, GlyphFont3x5.WIDTH, mDotsX, mDotsY);
+                for (int i = 0; i < dotsCount; i++) {
+                    mRenderer.drawAmbientFlipdot(CENTER + (offsetsX[digit] + mDotsX[i]) * BLOCK_SIZE,
+                            CENTER + (offsetsY[digit] + mDotsY[i]) * BLOCK_SIZE);
+                }
+            }
+            mRenderer.resetDirtyRect();
+        }
+        return mRenderer.getPixels()[CENTER * SIZE + CENTER];
+    }
+
+    private void drawDirtyCells() {
+        int dirtyCount = mCells.collectDirtyCells();
+        for (int i = 0; i < dirtyCount; i++) {
+            int cell = mCells.getDirtyCell(i);
+            int xPos = CENTER + (mCells.getCellColumn(cell) + Fixtures.GRID_LEFT) * BLOCK_SIZE - BLOCK_SIZE / 2;
+            int yPos = CENTER + (mCells.getCellRow(cell) + Fixtures.GRID_TOP) * BLOCK_SIZE - BLOCK_SIZE / 2;
+
+            mRenderer.drawBackground(xPos, yPos, xPos + BLOCK_SIZE, yPos + BLOCK_SIZE);
+            int sprite = mCells.getPlannedSprite(cell);
+            if (sprite != DirtyCellTracker.EMPTY) {
+                mRenderer.drawFlipdot(sprite, xPos, yPos);
+            }
+        }
+        mCells.commit();
+        mRenderer.resetDirtyRect();
+    }
+}
@@ -0,0 +1,70 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Digits of every minute of the day, from calendar lookups, from the cached wall clock used by
+ * updateActualTime and from plain hour and minute values. Scores are per minute.
+ */
+@State(Scope.Thread)
+public class TimeDigitsBenchmark {
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+    @Param({"true", "false"})
+    public boolean is24Hour;
+
+    private final int[] mDigits = new int[TimeDigits.DIGITS_COUNT];
+    private Calendar mCalendar;
+    private WallClock mWallClock;
+    private long mMidnightMs;
+
+    @Setup
+    public void setUp() {
+        mCalendar = Calendar.getInstance(TimeZone.getTimeZone("Europe/Kiev"));
+        mCalendar.set(2018, Calendar.OCTOBER, 1, 0, 0, 0);
+        mCalendar.set(Calendar.MILLISECOND, 0);
+        mMidnightMs = mCalendar.getTimeInMillis();
+        mWallClock = new WallClock(mCalendar.getTimeZone(), is24Hour);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.MINUTES_PER_DAY)
+    public void calendarDigits(Blackhole blackhole) {
+        for (int minuteOfDay = 0; minuteOfDay < Fixtures.MINUTES_PER_DAY; minuteOfDay++) {
+            mCalendar.setTimeInMillis(mMidnightMs + minuteOfDay * MILLIS_PER_MINUTE);
+            int hours = TimeDigits.toDisplayHours(mCalendar.get(Calendar.HOUR_OF_DAY), is24Hour);
+            TimeDigits.fill(hours, mCalendar.get(Calendar.MINUTE), mDigits);
+            blackhole.consume(mDigits);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.MINUTES_PER_DAY)
+    public void wallClockDigits(Blackhole blackhole) {
+        for (int minuteOfDay = 0; minuteOfDay < Fixtures.MINUTES_PER_DAY; minuteOfDay++) {
+            mWallClock.update(mMidnightMs + minuteOfDay * MILLIS_PER_MINUTE);
+            TimeDigits.fill(mWallClock.getDisplayHours(), mWallClock.getMinutes(), mDigits);
+            blackhole.consume(mDigits);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Fixtures.MINUTES_PER_DAY)
+    public void minuteOfDayDigits(Blackhole blackhole) {
+        for (int minuteOfDay = 0; minuteOfDay < Fixtures.MINUTES_PER_DAY; minuteOfDay++) {
+            int hours = TimeDigits.toDisplayHours(minuteOfDay / 60, is24Hour);
+            TimeDigits.fill(hours, minuteOfDay % 60, mDigits);
+            blackhole.consume(mDigits);
+        }
+    }
+}
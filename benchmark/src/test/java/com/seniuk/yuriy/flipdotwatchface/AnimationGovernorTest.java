@@ -0,0 +1,246 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Profile changes of the governor on battery, charging, power save and frame time sequences,
+ * and the MSG_UPDATE_TIME wakeups a transition takes in every profile, driven the way the
+ * engine's timer drives the timeline.
+ */
+public class AnimationGovernorTest {
+
+    private static final long FULL_STEP_MS = 50;
+    private static final long REDUCED_STEP_MS = 80;
+    private static final int REDUCED_STRIDE = 2;
+    private static final int FLIPDOTS_COUNT = 8;
+    private static final int OFF = 0;
+    private static final int ON = FLIPDOTS_COUNT - 1;
+
+    private static final class ManualClock implements AnimationTimeline.Clock {
+        long mNowMs = 1000;
+
+        @Override
+        public long uptimeMillis() {
+            return mNowMs;
+        }
+    }
+
+    private AnimationGovernor mGovernor;
+
+    @Before
+    public void setUp() {
+        mGovernor = new AnimationGovernor(FULL_STEP_MS, REDUCED_STEP_MS, REDUCED_STRIDE, FLIPDOTS_COUNT);
+    }
+
+    @Test
+    public void startsWithFullAnimation() {
+        assertProfile(AnimationGovernor.Profile.FULL);
+        assertEquals(FULL_STEP_MS, mGovernor.getStepDurationMs());
+        assertEquals(1, mGovernor.getIndexStride());
+    }
+
+    @Test
+    public void batteryLevelsStepDownAndBackUpWithMargin() {
+        int[] levels = new int[]{50, 21, 20, 15, 24, 25, 26, 20, 6, 5, 9, 10, 11, 25, 26};
+        int[] profiles = new int[]{
+                AnimationGovernor.Profile.FULL,
+                AnimationGovernor.Profile.FULL,
+                AnimationGovernor.Profile.REDUCED,
+                AnimationGovernor.Profile.REDUCED,
+                //reduced is left above 20 + margin only
+                AnimationGovernor.Profile.REDUCED,
+                AnimationGovernor.Profile.REDUCED,
+                AnimationGovernor.Profile.FULL,
+                AnimationGovernor.Profile.REDUCED,
+                AnimationGovernor.Profile.REDUCED,
+                AnimationGovernor.Profile.INSTANT,
+                //instant is left above 5 + margin only, to reduced
+                AnimationGovernor.Profile.INSTANT,
+                AnimationGovernor.Profile.INSTANT,
+                AnimationGovernor.Profile.REDUCED,
+                AnimationGovernor.Profile.REDUCED,
+                AnimationGovernor.Profile.FULL,
+        };
+        for (int i = 0; i < levels.length; i++) {
+            mGovernor.setBatteryState(levels[i], false);
+            assertEquals("battery " + levels[i] + "%, step " + i,
+                    AnimationGovernor.getProfileName(profiles[i]),
+                    AnimationGovernor.getProfileName(mGovernor.getProfile()));
+        }
+    }
+
+    @Test
+    public void levelHoveringAroundThresholdDoesNotFlap() {
+        mGovernor.setBatteryState(20, false);
+        assertProfile(AnimationGovernor.Profile.REDUCED);
+        for (int i = 0; i < 20; i++) {
+            mGovernor.setBatteryState(i % 2 == 0 ? 21 : 20, false);
+            assertProfile(AnimationGovernor.Profile.REDUCED);
+        }
+
+        mGovernor.setBatteryState(5, false);
+        assertProfile(AnimationGovernor.Profile.INSTANT);
+        for (int i = 0; i < 20; i++) {
+            mGovernor.setBatteryState(i % 2 == 0 ? 6 : 5, false);
+            assertProfile(AnimationGovernor.Profile.INSTANT);
+        }
+    }
+
+    @Test
+    public void chargingIgnoresBatteryLevel() {
+        mGovernor.setBatteryState(3, false);
+        assertProfile(AnimationGovernor.Profile.INSTANT);
+        mGovernor.setBatteryState(3, true);
+        assertProfile(AnimationGovernor.Profile.FULL);
+        mGovernor.setBatteryState(15, true);
+        assertProfile(AnimationGovernor.Profile.FULL);
+        mGovernor.setBatteryState(15, false);
+        assertProfile(AnimationGovernor.Profile.REDUCED);
+    }
+
+    @Test
+    public void powerSaveModeOverridesEverything() {
+        mGovernor.setBatteryState(80, true);
+        mGovernor.setPowerSaveMode(true);
+        assertProfile(AnimationGovernor.Profile.INSTANT);
+        mGovernor.setBatteryState(90, true);
+        assertProfile(AnimationGovernor.Profile.INSTANT);
+
+        mGovernor.setPowerSaveMode(false);
+        assertProfile(AnimationGovernor.Profile.FULL);
+
+        mGovernor.setBatteryState(15, false);
+        mGovernor.setPowerSaveMode(true);
+        mGovernor.setPowerSaveMode(false);
+        assertProfile(AnimationGovernor.Profile.REDUCED);
+    }
+
+    @Test
+    public void slowFramesReduceUntilTheAverageIsFastAgain() {
+        long stepUs = FULL_STEP_MS * 1000;
+        //below half of the step budget
+        for (int i = 0; i < 50; i++) {
+            mGovernor.recordFrameTimeUs(stepUs * 40 / 100);
+        }
+        assertProfile(AnimationGovernor.Profile.FULL);
+
+        for (int i = 0; i < 50 && mGovernor.getProfile() == AnimationGovernor.Profile.FULL; i++) {
+            mGovernor.recordFrameTimeUs(stepUs);
+        }
+        assertProfile(AnimationGovernor.Profile.REDUCED);
+
+        //between the thresholds the profile stays
+        for (int i = 0; i < 100; i++) {
+            mGovernor.recordFrameTimeUs(stepUs * 35 / 100);
+            assertProfile(AnimationGovernor.Profile.REDUCED);
+        }
+
+        for (int i = 0; i < 100 && mGovernor.getProfile() == AnimationGovernor.Profile.REDUCED; i++) {
+            mGovernor.recordFrameTimeUs(stepUs * 10 / 100);
+        }
+        assertProfile(AnimationGovernor.Profile.FULL);
+        assertTrue(mGovernor.getAverageFrameTimeUs() * 100 < stepUs * 25);
+    }
+
+    @Test
+    public void singleSlowFrameDoesNotReduce() {
+        long stepUs = FULL_STEP_MS * 1000;
+        for (int i = 0; i < 50; i++) {
+            mGovernor.recordFrameTimeUs(stepUs * 10 / 100);
+        }
+        mGovernor.recordFrameTimeUs(stepUs * 2);
+        assertProfile(AnimationGovernor.Profile.FULL);
+    }
+
+    @Test
+    public void slowFramesDoNotLiftInstant() {
+        mGovernor.setBatteryState(4, false);
+        for (int i = 0; i < 50; i++) {
+            mGovernor.recordFrameTimeUs(FULL_STEP_MS * 1000);
+        }
+        assertProfile(AnimationGovernor.Profile.INSTANT);
+    }
+
+    @Test
+    public void paceOfEveryProfile() {
+        mGovernor.setBatteryState(15, false);
+        assertEquals(REDUCED_STEP_MS, mGovernor.getStepDurationMs());
+        assertEquals(REDUCED_STRIDE, mGovernor.getIndexStride());
+
+        mGovernor.setBatteryState(4, false);
+        assertEquals(FULL_STEP_MS, mGovernor.getStepDurationMs());
+        assertEquals(FLIPDOTS_COUNT, mGovernor.getIndexStride());
+
+        mGovernor.setStepDurationsMs(2 * FULL_STEP_MS, 2 * REDUCED_STEP_MS);
+        mGovernor.setBatteryState(15, false);
+        assertEquals(2 * REDUCED_STEP_MS, mGovernor.getStepDurationMs());
+    }
+
+    @Test
+    public void punctualTransitionTakesStepsCountWakeups() {
+        for (int level : new int[]{80, 15, 4}) {
+            mGovernor.setBatteryState(level, false);
+            assertWakeups(OFF, ON, 0, true);
+            assertWakeups(ON, OFF, 0, true);
+        }
+    }
+
+    @Test
+    public void lateTransitionNeverTakesMoreThanStepsCountWakeups() {
+        for (int level : new int[]{80, 15, 4}) {
+            mGovernor.setBatteryState(level, false);
+            for (long maxLateMs : new long[]{1, FULL_STEP_MS / 2, 3 * REDUCED_STEP_MS}) {
+                assertWakeups(OFF, ON, maxLateMs, false);
+                assertWakeups(ON, OFF, maxLateMs, false);
+            }
+        }
+    }
+
+    /**
+     * Runs a transition like the MSG_UPDATE_TIME handler: the first wakeup starts it with the
+     * governor's pace, every next one comes the timeline's delay later, plus up to the given
+     * lateness, and samples it.
+     */
+    private void assertWakeups(int fromIndex, int toIndex, long maxLateMs, boolean punctual) {
+        String profile = AnimationGovernor.getProfileName(mGovernor.getProfile());
+        ManualClock clock = new ManualClock();
+        AnimationTimeline timeline = new AnimationTimeline(clock, FULL_STEP_MS);
+        Random random = new Random(fromIndex * 31 + maxLateMs);
+
+        timeline.setPace(mGovernor.getStepDurationMs(), mGovernor.getIndexStride());
+        timeline.start(fromIndex, toIndex);
+        int stepsCount = timeline.getStepsCount();
+        int wakeups = 1;
+        int lastIndex = timeline.getAnimationIndex();
+        while (!timeline.isFinished()) {
+            assertTrue(profile + ": " + wakeups + " wakeups for " + stepsCount + " steps", wakeups < stepsCount);
+            clock.mNowMs += timeline.getDelayToNextStepMs() + (maxLateMs > 0 ? random.nextInt((int) maxLateMs + 1) : 0);
+            timeline.update();
+            wakeups++;
+
+            int index = timeline.getAnimationIndex();
+            assertTrue(profile + ": index " + index + " after " + lastIndex,
+                    (index - lastIndex) * Integer.signum(toIndex - fromIndex) > 0);
+            lastIndex = index;
+        }
+
+        assertEquals(profile, toIndex, timeline.getAnimationIndex());
+        assertTrue(profile + ": " + wakeups + " wakeups for " + stepsCount + " steps", wakeups <= stepsCount);
+        if (punctual) {
+            assertEquals(profile, stepsCount, wakeups);
+        }
+        int stride = mGovernor.getIndexStride();
+        assertEquals(profile, (Math.abs(toIndex - fromIndex) + stride - 1) / stride, stepsCount);
+    }
+
+    private void assertProfile(int expected) {
+        assertEquals(AnimationGovernor.getProfileName(expected),
+                AnimationGovernor.getProfileName(mGovernor.getProfile()));
+    }
+}
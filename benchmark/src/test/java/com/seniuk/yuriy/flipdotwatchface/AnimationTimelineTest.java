@@ -0,0 +1,147 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Animation index, finished state and next step delay of the timeline on a manual clock.
+ */
+public class AnimationTimelineTest {
+
+    private static final long STEP_MS = 50;
+    private static final int OFF = 0;
+    private static final int ON = 7;
+
+    private static final class ManualClock implements AnimationTimeline.Clock {
+        long mNowMs = 1000;
+
+        @Override
+        public long uptimeMillis() {
+            return mNowMs;
+        }
+    }
+
+    private ManualClock mClock;
+    private AnimationTimeline mTimeline;
+
+    @Before
+    public void setUp() {
+        mClock = new ManualClock();
+        mTimeline = new AnimationTimeline(mClock, STEP_MS);
+    }
+
+    @Test
+    public void restsAtResetIndex() {
+        mTimeline.reset(ON);
+        assertTrue(mTimeline.isFinished());
+        assertEquals(ON, mTimeline.getAnimationIndex());
+    }
+
+    @Test
+    public void firstStepIsShownRightAway() {
+        mTimeline.start(OFF, ON);
+        assertFalse(mTimeline.isFinished());
+        assertEquals(OFF + 1, mTimeline.getAnimationIndex());
+        assertEquals(STEP_MS, mTimeline.getDelayToNextStepMs());
+    }
+
+    @Test
+    public void endIndexIsReachedAfterStepsMinusOneDurations() {
+        mTimeline.start(OFF, ON);
+        assertEquals(ON - OFF, mTimeline.getStepsCount());
+
+        mClock.mNowMs += (ON - OFF - 2) * STEP_MS;
+        mTimeline.update();
+        assertFalse(mTimeline.isFinished());
+        assertEquals(ON - 1, mTimeline.getAnimationIndex());
+
+        mClock.mNowMs += STEP_MS;
+        mTimeline.update();
+        assertTrue(mTimeline.isFinished());
+        assertEquals(ON, mTimeline.getAnimationIndex());
+    }
+
+    @Test
+    public void runsInReverse() {
+        mTimeline.start(ON, OFF);
+        assertEquals(ON - 1, mTimeline.getAnimationIndex());
+
+        mClock.mNowMs += 2 * STEP_MS;
+        mTimeline.update();
+        assertEquals(ON - 3, mTimeline.getAnimationIndex());
+    }
+
+    @Test
+    public void lateFrameSkipsMissedStages() {
+        mTimeline.start(OFF, ON);
+        mClock.mNowMs += 3 * STEP_MS + STEP_MS / 2;
+        mTimeline.update();
+        assertEquals(OFF + 4, mTimeline.getAnimationIndex());
+        //next stage stays on the grid of the start time
+        assertEquals(STEP_MS / 2, mTimeline.getDelayToNextStepMs());
+    }
+
+    @Test
+    public void extraFramesDontSpeedUp() {
+        mTimeline.start(OFF, ON);
+        for (int i = 0; i < 10; i++) {
+            mClock.mNowMs += 1;
+            mTimeline.update();
+            assertEquals(OFF + 1, mTimeline.getAnimationIndex());
+        }
+    }
+
+    @Test
+    public void strideShortensTheLastStep() {
+        mTimeline.setPace(STEP_MS, 3);
+        mTimeline.start(OFF, ON);
+        assertEquals(3, mTimeline.getStepsCount());
+        assertEquals(OFF + 3, mTimeline.getAnimationIndex());
+
+        mClock.mNowMs += STEP_MS;
+        mTimeline.update();
+        assertEquals(OFF + 6, mTimeline.getAnimationIndex());
+
+        mClock.mNowMs += STEP_MS;
+        mTimeline.update();
+        assertTrue(mTimeline.isFinished());
+        assertEquals(ON, mTimeline.getAnimationIndex());
+    }
+
+    @Test
+    public void paceIsTakenByTheNextAnimation() {
+        mTimeline.start(OFF, ON);
+        mTimeline.setPace(2 * STEP_MS, 1);
+        //running animation still has its start time, only the step duration of the sampling changes
+        mTimeline.start(OFF, ON);
+        mClock.mNowMs += STEP_MS;
+        mTimeline.update();
+        assertEquals(OFF + 1, mTimeline.getAnimationIndex());
+        mClock.mNowMs += STEP_MS;
+        mTimeline.update();
+        assertEquals(OFF + 2, mTimeline.getAnimationIndex());
+    }
+
+    @Test
+    public void chainDoesNotAddTheLatenessOfTheLastFrame() {
+        mTimeline.start(ON, OFF);
+        long endMs = mClock.mNowMs + (ON - OFF - 1) * STEP_MS;
+        //finishing frame comes late
+        mClock.mNowMs = endMs + STEP_MS / 2;
+        mTimeline.update();
+        assertTrue(mTimeline.isFinished());
+
+        mTimeline.chain(OFF, ON);
+        //the chained animation started one step after the end, not now
+        assertEquals(OFF, mTimeline.getAnimationIndex());
+        assertEquals(STEP_MS / 2, mTimeline.getDelayToNextStepMs());
+
+        mClock.mNowMs = endMs + STEP_MS;
+        mTimeline.update();
+        assertEquals(OFF + 1, mTimeline.getAnimationIndex());
+    }
+}
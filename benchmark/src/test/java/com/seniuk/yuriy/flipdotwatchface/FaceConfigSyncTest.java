@@ -0,0 +1,174 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Batches of the phone's config sync on an in-process data layer and a manual scheduler.
+ */
+public class FaceConfigSyncTest {
+
+    private static final int FIRST_STEP_MS = 40;
+    private static final int LAST_STEP_MS = 90;
+    //edits of a slider come faster than the coalescing delay
+    private static final long EDIT_INTERVAL_MS = 100;
+
+    private static final class FakeDataLayer implements FaceConfigSync.DataLayer {
+        boolean mConnected;
+        Callback mCallback;
+        final List<byte[]> mItems = new ArrayList<>();
+
+        @Override
+        public void connect(Callback callback) {
+            mCallback = callback;
+        }
+
+        @Override
+        public void disconnect() {
+            mConnected = false;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public void putUrgentDataItem(String path, byte[] data) {
+            assertEquals(FaceConfig.DATA_PATH, path);
+            mItems.add(data);
+        }
+
+        void completeConnection() {
+            mConnected = true;
+            mCallback.onConnected();
+        }
+
+        int getLastStepDurationMs() {
+            return FaceConfig.fromByteArray(mItems.get(mItems.size() - 1)).getStepDurationMs();
+        }
+    }
+
+    private static final class ManualScheduler implements FaceConfigSync.Scheduler {
+        long mNowMs;
+        Runnable mRunnable;
+        long mRunAtMs;
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMs) {
+            mRunnable = runnable;
+            mRunAtMs = mNowMs + delayMs;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            if (mRunnable == runnable) {
+                mRunnable = null;
+            }
+        }
+
+        void advance(long ms) {
+            mNowMs += ms;
+            if (mRunnable != null && mRunAtMs <= mNowMs) {
+                Runnable runnable = mRunnable;
+                mRunnable = null;
+                runnable.run();
+            }
+        }
+    }
+
+    private FakeDataLayer mDataLayer;
+    private ManualScheduler mScheduler;
+    private FaceConfigSync mSync;
+    private FaceConfig mConfig;
+
+    @Before
+    public void setUp() {
+        mDataLayer = new FakeDataLayer();
+        mScheduler = new ManualScheduler();
+        mSync = new FaceConfigSync(mDataLayer, mScheduler);
+        mConfig = new FaceConfig();
+        mConfig.setDefaults();
+    }
+
+    private void edit(int stepDurationMs) {
+        mConfig.setStepDurationMs(stepDurationMs);
+        mSync.scheduleSync(mConfig);
+    }
+
+    @Test
+    public void editsInQuickSuccessionAreOneWrite() {
+        mSync.connect();
+        mDataLayer.completeConnection();
+
+        for (int step = FIRST_STEP_MS; step <= LAST_STEP_MS; step += 10) {
+            edit(step);
+            mScheduler.advance(EDIT_INTERVAL_MS);
+        }
+        assertTrue(mDataLayer.mItems.isEmpty());
+
+        mScheduler.advance(FaceConfigSync.COALESCE_DELAY_MS);
+        assertEquals(1, mDataLayer.mItems.size());
+        assertEquals(LAST_STEP_MS, mDataLayer.getLastStepDurationMs());
+    }
+
+    @Test
+    public void editAfterTheBatchIsAnotherWrite() {
+        mSync.connect();
+        mDataLayer.completeConnection();
+
+        edit(FIRST_STEP_MS);
+        mScheduler.advance(FaceConfigSync.COALESCE_DELAY_MS);
+        edit(LAST_STEP_MS);
+        mScheduler.advance(FaceConfigSync.COALESCE_DELAY_MS);
+
+        assertEquals(2, mDataLayer.mItems.size());
+        assertEquals(LAST_STEP_MS, mDataLayer.getLastStepDurationMs());
+    }
+
+    @Test
+    public void editsBeforeTheConnectionAreSentOnConnect() {
+        mSync.connect();
+        edit(FIRST_STEP_MS);
+        mScheduler.advance(FaceConfigSync.COALESCE_DELAY_MS);
+        assertTrue(mDataLayer.mItems.isEmpty());
+
+        mDataLayer.completeConnection();
+        assertEquals(1, mDataLayer.mItems.size());
+        assertEquals(FIRST_STEP_MS, mDataLayer.getLastStepDurationMs());
+    }
+
+    @Test
+    public void connectionDuringABatchWaitsForIt() {
+        mSync.connect();
+        edit(FIRST_STEP_MS);
+        mDataLayer.completeConnection();
+        edit(LAST_STEP_MS);
+        assertTrue(mDataLayer.mItems.isEmpty());
+
+        mScheduler.advance(FaceConfigSync.COALESCE_DELAY_MS);
+        assertEquals(1, mDataLayer.mItems.size());
+        assertEquals(LAST_STEP_MS, mDataLayer.getLastStepDurationMs());
+    }
+
+    @Test
+    public void disconnectSendsThePendingEdit() {
+        mSync.connect();
+        mDataLayer.completeConnection();
+        edit(LAST_STEP_MS);
+
+        mSync.disconnect();
+        assertEquals(1, mDataLayer.mItems.size());
+        assertEquals(LAST_STEP_MS, mDataLayer.getLastStepDurationMs());
+
+        //nothing is left to send once the batch is due
+        mScheduler.advance(FaceConfigSync.COALESCE_DELAY_MS);
+        assertEquals(1, mDataLayer.mItems.size());
+    }
+}
@@ -0,0 +1,150 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Blob of the synced config: round trip, truncated blobs, blobs of later versions, and the
+ * fields the watch applies on a change.
+ */
+public class FaceConfigTest {
+
+    private static final int AMBER = 0xFFFFB000;
+    private static final int STEP_DURATION_MS = 120;
+    private static final float STROKE_WIDTH = 5f;
+    private static final int BAD_MODE = 7;
+    //bit of a field added after the known ones
+    private static final int LATER_FIELD = FaceConfig.Field.ALL + 1;
+
+    private static FaceConfig createFullConfig() {
+        FaceConfig config = new FaceConfig();
+        config.setFlipdotColor(AMBER);
+        config.setStepDurationMs(STEP_DURATION_MS);
+        config.setBurnInStrokeWidth(STROKE_WIDTH);
+        config.setDisplayMode(FaceConfig.DisplayMode.MATRIX);
+        config.setTransitionMode(FaceConfig.TransitionMode.FULL_CYCLE);
+        config.setShowSeconds(true);
+        return config;
+    }
+
+    @Test
+    public void everyFieldSurvivesTheRoundTrip() {
+        FaceConfig config = FaceConfig.fromByteArray(createFullConfig().toByteArray());
+
+        assertNotNull(config);
+        assertEquals(AMBER, config.getFlipdotColor());
+        assertEquals(STEP_DURATION_MS, config.getStepDurationMs());
+        assertEquals(STROKE_WIDTH, config.getBurnInStrokeWidth(), 0f);
+        assertEquals(FaceConfig.DisplayMode.MATRIX, config.getDisplayMode());
+        assertEquals(FaceConfig.TransitionMode.FULL_CYCLE, config.getTransitionMode());
+        assertTrue(config.isShowSeconds());
+        assertEquals(0, config.getChangedFields(createFullConfig()));
+    }
+
+    @Test
+    public void onlyTheSetFieldsAreWritten() {
+        FaceConfig config = new FaceConfig();
+        config.setStepDurationMs(STEP_DURATION_MS);
+        byte[] data = config.toByteArray();
+
+        //version, field mask and the short
+        assertEquals(4, data.length);
+        FaceConfig read = FaceConfig.fromByteArray(data);
+        assertTrue(read.has(FaceConfig.Field.STEP_DURATION_MS));
+        assertFalse(read.has(FaceConfig.Field.FLIPDOT_COLOR));
+        assertEquals(STEP_DURATION_MS, read.getStepDurationMs());
+    }
+
+    @Test
+    public void truncatedBlobIsRejected() {
+        byte[] data = createFullConfig().toByteArray();
+        for (int length = 0; length < data.length; length++) {
+            assertNull(FaceConfig.fromByteArray(Arrays.copyOf(data, length)));
+        }
+        assertNull(FaceConfig.fromByteArray(null));
+    }
+
+    @Test
+    public void laterFieldsAreSkipped() {
+        byte[] known = createFullConfig().toByteArray();
+        //a later version of the phone appends its field after the known ones
+        byte[] data = Arrays.copyOf(known, known.length + 2);
+        data[1] = (byte) (FaceConfig.Field.ALL | LATER_FIELD);
+
+        FaceConfig config = FaceConfig.fromByteArray(data);
+        assertNotNull(config);
+        assertEquals(0, config.getChangedFields(createFullConfig()));
+        assertFalse(config.has(LATER_FIELD));
+    }
+
+    @Test
+    public void otherVersionIsRejected() {
+        byte[] data = createFullConfig().toByteArray();
+        data[0] = (byte) (FaceConfig.VERSION + 1);
+        assertNull(FaceConfig.fromByteArray(data));
+    }
+
+    @Test
+    public void valuesOutOfTheRangesAreBroughtBack() {
+        FaceConfig config = new FaceConfig();
+        config.setStepDurationMs(0);
+        config.setBurnInStrokeWidth(-1f);
+        config.setDisplayMode(BAD_MODE);
+        config.setTransitionMode(BAD_MODE);
+
+        FaceConfig read = FaceConfig.fromByteArray(config.toByteArray());
+        //a zero step would divide by zero in the animation timeline
+        assertEquals(FaceConfig.MIN_STEP_DURATION_MS, read.getStepDurationMs());
+        assertEquals(FaceConfig.MIN_BURN_IN_STROKE_WIDTH, read.getBurnInStrokeWidth(), 0f);
+        assertEquals(FaceConfig.DEFAULT_DISPLAY_MODE, read.getDisplayMode());
+        assertEquals(FaceConfig.DEFAULT_TRANSITION_MODE, read.getTransitionMode());
+    }
+
+    @Test
+    public void widthThatIsNotANumberIsLeftUnset() {
+        FaceConfig config = new FaceConfig();
+        config.setBurnInStrokeWidth(Float.NaN);
+        assertFalse(FaceConfig.fromByteArray(config.toByteArray()).has(FaceConfig.Field.BURN_IN_STROKE_WIDTH));
+
+        config.setBurnInStrokeWidth(Float.POSITIVE_INFINITY);
+        assertFalse(FaceConfig.fromByteArray(config.toByteArray()).has(FaceConfig.Field.BURN_IN_STROKE_WIDTH));
+    }
+
+    @Test
+    public void changedFieldsAreTheNewAndTheEditedOnes() {
+        FaceConfig previous = new FaceConfig();
+        previous.setFlipdotColor(AMBER);
+        previous.setShowSeconds(false);
+
+        FaceConfig config = new FaceConfig(previous);
+        assertEquals(0, config.getChangedFields(previous));
+
+        config.setFlipdotColor(AMBER);
+        config.setShowSeconds(true);
+        config.setStepDurationMs(STEP_DURATION_MS);
+        assertEquals(FaceConfig.Field.SHOW_SECONDS | FaceConfig.Field.STEP_DURATION_MS,
+                config.getChangedFields(previous));
+        //a field missing in the new config is kept by the watch
+        assertEquals(FaceConfig.Field.SHOW_SECONDS, previous.getChangedFields(config));
+    }
+
+    @Test
+    public void defaultsFillTheUnsetFieldsOnly() {
+        FaceConfig config = new FaceConfig();
+        config.setFlipdotColor(AMBER);
+        config.setDefaults();
+
+        assertEquals(FaceConfig.Field.ALL, config.getChangedFields(new FaceConfig()));
+        assertEquals(AMBER, config.getFlipdotColor());
+        assertEquals(FaceConfig.DEFAULT_STEP_DURATION_MS, config.getStepDurationMs());
+        assertEquals(FaceConfig.DEFAULT_DISPLAY_MODE, config.getDisplayMode());
+        assertEquals(FaceConfig.DEFAULT_TRANSITION_MODE, config.getTransitionMode());
+    }
+}
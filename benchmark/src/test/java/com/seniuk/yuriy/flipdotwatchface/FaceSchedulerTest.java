@@ -0,0 +1,268 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Messages, invalidates and transitions of the scheduler on a fake handler and a manual clock.
+ */
+public class FaceSchedulerTest {
+
+    private static final int ON = 7;
+    private static final int GRID_LEFT = -3;
+    private static final int GRID_TOP = -5;
+    private static final int GRID_COLUMNS = 7;
+    private static final int GRID_ROWS = 11;
+    private static final int SECONDS_ROW = 5;
+    private static final int MATRIX_SIZE = 24;
+    private static final int MATRIX_LINE_LENGTH = 16;
+    private static final int MAX_MESSAGES = 10000;
+    private static final char[] SYMBOL_CHARS = "0123456789!".toCharArray();
+    //10:15:30 UTC
+    private static final long START_MS = ((10 * 60 + 15) * 60 + 30) * 1000L;
+
+    private static final class FakeHost implements FaceScheduler.Host, FaceScheduler.Clock {
+        long mNowMs = START_MS;
+        int mInvalidates;
+        //pending messages, in the order sent
+        final List<long[]> mMessages = new ArrayList<>();
+
+        @Override
+        public void invalidate() {
+            mInvalidates++;
+        }
+
+        @Override
+        public void sendMessageDelayed(int what, long delayMs) {
+            mMessages.add(new long[]{what, mNowMs + delayMs});
+        }
+
+        @Override
+        public void removeMessages(int what) {
+            for (int i = mMessages.size() - 1; i >= 0; i--) {
+                if (mMessages.get(i)[0] == what) {
+                    mMessages.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return mNowMs;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNowMs;
+        }
+
+        boolean hasMessage(int what) {
+            for (long[] message : mMessages) {
+                if (message[0] == what) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Delivers the first message due, moving the clock to it.
+         *
+         * @return the message delivered
+         */
+        int deliverNext(FaceScheduler scheduler) {
+            int first = -1;
+            for (int i = 0; i < mMessages.size(); i++) {
+                if (first < 0 || mMessages.get(i)[1] < mMessages.get(first)[1]) {
+                    first = i;
+                }
+            }
+            long[] message = mMessages.remove(first);
+            mNowMs = Math.max(mNowMs, message[1]);
+            scheduler.handleMessage((int) message[0]);
+            return (int) message[0];
+        }
+
+        /**
+         * Delivers the animation steps until the timer stops.
+         */
+        void runAnimation(FaceScheduler scheduler) {
+            while (hasMessage(FaceScheduler.MSG_UPDATE_TIME) || hasMessage(FaceScheduler.MSG_ON_INTERACTIVE_MSG)) {
+                deliverNext(scheduler);
+            }
+        }
+    }
+
+    private FakeHost mHost;
+    private FaceScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        int[] symbolMasks = new int[SYMBOL_CHARS.length];
+        for (int i = 0; i < SYMBOL_CHARS.length; i++) {
+            symbolMasks[i] = GlyphFont3x5.glyph(SYMBOL_CHARS[i]);
+        }
+        mHost = new FakeHost();
+        mScheduler = new FaceScheduler(mHost, mHost, new WallClock(TimeZone.getTimeZone("UTC"), true),
+                ON + 1, symbolMasks, new int[]{-3, 1, -3, 1}, new int[]{-5, -5, 1, 1},
+                GRID_LEFT, GRID_TOP, GRID_COLUMNS, GRID_ROWS, SECONDS_ROW, null);
+        mScheduler.setSpritesLoaded(true);
+    }
+
+    @Test
+    public void interactiveTransitionShowsTheTimeAndStopsTheTimer() {
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.onTimeChanged();
+        mHost.runAnimation(mScheduler);
+
+        assertEquals(ON, mScheduler.getCurrentAnimationIndex());
+        assertEquals(10 * 60 + 15, mScheduler.getMinuteOfDay());
+        assertFalse(mHost.hasMessage(FaceScheduler.MSG_UPDATE_TIME));
+        assertTrue(mHost.hasMessage(FaceScheduler.MSG_MINUTE_BOUNDARY));
+    }
+
+    @Test
+    public void ambientStopsTheTimers() {
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.onTimeChanged();
+        mScheduler.onAmbientModeChanged(true);
+
+        assertTrue(mScheduler.isAmbient());
+        assertTrue(mHost.mMessages.isEmpty());
+    }
+
+    @Test
+    public void minuteBoundaryIsAtTheNextMinute() {
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.onTimeChanged();
+        mHost.runAnimation(mScheduler);
+
+        for (long[] message : mHost.mMessages) {
+            if (message[0] == FaceScheduler.MSG_MINUTE_BOUNDARY) {
+                assertEquals(START_MS + 30 * 1000, message[1]);
+            }
+        }
+    }
+
+    @Test
+    public void minuteBoundaryAfterAnInvisiblePeriodIsAtTheNextMinute() {
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.onTimeChanged();
+        mHost.runAnimation(mScheduler);
+        mScheduler.onVisibilityChanged(false);
+
+        //10:17:10
+        mHost.mNowMs += (60 + 40) * 1000;
+        mScheduler.onVisibilityChanged(true);
+        assertEquals(START_MS + (60 + 40 + 50) * 1000, getDueMs(FaceScheduler.MSG_MINUTE_BOUNDARY));
+    }
+
+    private long getDueMs(int what) {
+        for (long[] message : mHost.mMessages) {
+            if (message[0] == what) {
+                return message[1];
+            }
+        }
+        throw new AssertionError("message " + what + " not sent");
+    }
+
+    @Test
+    public void peekCardRedrawsAmbientOnly() {
+        mScheduler.onVisibilityChanged(true);
+        int invalidates = mHost.mInvalidates;
+        mScheduler.onPeekCardMoved();
+        assertEquals(invalidates, mHost.mInvalidates);
+
+        mScheduler.onAmbientModeChanged(true);
+        invalidates = mHost.mInvalidates;
+        mScheduler.onPeekCardMoved();
+        assertEquals(invalidates + 1, mHost.mInvalidates);
+    }
+
+    @Test
+    public void fullCycleFlipsOffBeforeTheNewDigits() {
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.onTimeChanged();
+        mHost.runAnimation(mScheduler);
+
+        mScheduler.setTransitionMode(FaceConfig.TransitionMode.FULL_CYCLE);
+        assertTrue(mScheduler.isReverse());
+
+        mHost.mNowMs += 30 * 1000;
+        mScheduler.onTimeChanged();
+        mHost.runAnimation(mScheduler);
+        assertEquals(ON, mScheduler.getCurrentAnimationIndex());
+        assertEquals(10 * 60 + 16, mScheduler.getMinuteOfDay());
+    }
+
+    @Test
+    public void matrixScrollsOncePerRaise() {
+        DotMatrixLayout layout = new DotMatrixLayout(MATRIX_SIZE, MATRIX_SIZE, MATRIX_LINE_LENGTH);
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.setDotMatrix(new DotMatrix(MATRIX_SIZE, MATRIX_SIZE, ON), layout);
+        //date line is wider than the matrix
+        int passSteps = layout.getScrollPassSteps();
+        assertTrue(passSteps > 0);
+
+        assertEquals(passSteps, runMatrix());
+        assertFalse(mHost.hasMessage(FaceScheduler.MSG_MATRIX_SCROLL));
+
+        mScheduler.onAmbientModeChanged(true);
+        mScheduler.onAmbientModeChanged(false);
+        assertEquals(passSteps, runMatrix());
+    }
+
+    @Test
+    public void fullCycleKeepsTheMatrixSettled() {
+        DotMatrixLayout layout = new DotMatrixLayout(MATRIX_SIZE, MATRIX_SIZE, MATRIX_LINE_LENGTH);
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.setDotMatrix(new DotMatrix(MATRIX_SIZE, MATRIX_SIZE, ON), layout);
+        runMatrix();
+
+        mScheduler.setTransitionMode(FaceConfig.TransitionMode.FULL_CYCLE);
+        assertFalse(mScheduler.isReverse());
+        mScheduler.onTimeChanged();
+        runMatrix();
+        assertEquals(ON, mScheduler.getCurrentAnimationIndex());
+        assertFalse(mHost.hasMessage(FaceScheduler.MSG_UPDATE_TIME));
+    }
+
+    /**
+     * Delivers the messages of the matrix until it settles.
+     *
+     * @return scroll steps taken
+     */
+    private int runMatrix() {
+        int scrollSteps = 0;
+        for (int i = 0; i < MAX_MESSAGES; i++) {
+            if (!mHost.hasMessage(FaceScheduler.MSG_MATRIX_SCROLL)
+                    && !mHost.hasMessage(FaceScheduler.MSG_UPDATE_TIME)
+                    && !mHost.hasMessage(FaceScheduler.MSG_ON_INTERACTIVE_MSG)) {
+                return scrollSteps;
+            }
+            //minute boundary is a minute away, after the pass
+            if (mHost.deliverNext(mScheduler) == FaceScheduler.MSG_MATRIX_SCROLL) {
+                scrollSteps++;
+            }
+        }
+        throw new AssertionError("matrix doesn't settle");
+    }
+
+    @Test
+    public void secondsWakeUpEverySecond() {
+        mScheduler.onVisibilityChanged(true);
+        mScheduler.setShowSeconds(true);
+
+        assertTrue(mHost.hasMessage(FaceScheduler.MSG_SECOND_BOUNDARY));
+        assertFalse(mHost.hasMessage(FaceScheduler.MSG_MINUTE_BOUNDARY));
+        assertEquals(30, mScheduler.getSeconds());
+    }
+}
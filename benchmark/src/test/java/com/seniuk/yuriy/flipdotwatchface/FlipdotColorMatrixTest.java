@@ -0,0 +1,34 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Recoloring of the full color sprites: the lit green of the artwork and the grays of the cell.
+ */
+public class FlipdotColorMatrixTest {
+
+    private static final int AMBER = 0xFFFFB000;
+    private static final int RED = 0xFFFF0000;
+    private static final int[] GRAYS = new int[]{0xFF000000, 0xFF101010, 0xFF4B4B4B, 0xFFDFDFDF, 0x80FFFFFF};
+
+    @Test
+    public void artworkColorTurnsToTheFlipdotColor() {
+        assertEquals(AMBER, FlipdotColorMatrix.apply(FlipdotColorMatrix.create(AMBER),
+                FlipdotColorMatrix.ARTWORK_COLOR));
+        assertEquals(RED, FlipdotColorMatrix.apply(FlipdotColorMatrix.create(RED),
+                FlipdotColorMatrix.ARTWORK_COLOR));
+        //alpha of the antialiased edge is kept
+        assertEquals(RED & 0x40FFFFFF, FlipdotColorMatrix.apply(FlipdotColorMatrix.create(RED),
+                FlipdotColorMatrix.ARTWORK_COLOR & 0x40FFFFFF));
+    }
+
+    @Test
+    public void graysAreKept() {
+        float[] matrix = FlipdotColorMatrix.create(AMBER);
+        for (int gray : GRAYS) {
+            assertEquals(gray, FlipdotColorMatrix.apply(matrix, gray));
+        }
+    }
+}
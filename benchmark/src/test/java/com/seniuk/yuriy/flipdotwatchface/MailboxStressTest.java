@@ -0,0 +1,177 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stresses the snapshot hand-off to the render thread with concurrent producers and fails
+ * when the consumer gets a snapshot older than one it already took, a snapshot is neither
+ * taken nor replaced, or a post doesn't wake the consumer.
+ * <p>
+ * In the flood test producers post as fast as they can in rounds, each round ends with a
+ * marker that has to reach the consumer. In the ping-pong test a single producer waits for
+ * every snapshot to be taken before it posts the next one, so any lost wakeup stalls it.
+ */
+public class MailboxStressTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int ROUNDS = 50;
+    private static final int POSTS_PER_ROUND = 20000;
+    private static final int PING_PONG_POSTS = 200000;
+    //consumer draws a frame for about this long, so that posts pile up and are replaced
+    private static final long FRAME_SPIN_NS = 2000;
+    //for a single hand-off, a lost wakeup shows up as a stall this long
+    private static final long HAND_OFF_TIMEOUT_MS = 10000;
+    //for a whole test, a stall the hand-off timeout doesn't catch fails the test run
+    private static final long TEST_TIMEOUT_MS = 120000;
+    //producer of the round markers
+    private static final int MARKER = -1;
+
+    private static final class Snapshot {
+        final int mProducer;
+        final long mSequence;
+
+        Snapshot(int producer, long sequence) {
+            mProducer = producer;
+            mSequence = sequence;
+        }
+    }
+
+    private static final class Consumer extends Thread {
+        private final SnapshotMailbox<Snapshot> mMailbox;
+        private final long mFrameSpinNs;
+        //per producer, the marker last
+        private final long[] mLastSequences = new long[PRODUCERS + 1];
+        private final AtomicLong mTaken = new AtomicLong();
+        private final AtomicLong mLastMarker = new AtomicLong(-1);
+        private volatile String mFailure;
+
+        Consumer(SnapshotMailbox<Snapshot> mailbox, long frameSpinNs) {
+            super("MailboxStressConsumer");
+            mMailbox = mailbox;
+            mFrameSpinNs = frameSpinNs;
+            for (int i = 0; i < mLastSequences.length; i++) {
+                mLastSequences[i] = -1;
+            }
+        }
+
+        @Override
+        public void run() {
+            Snapshot snapshot;
+            while ((snapshot = mMailbox.take()) != null) {
+                int slot = snapshot.mProducer == MARKER ? PRODUCERS : snapshot.mProducer;
+                if (snapshot.mSequence <= mLastSequences[slot]) {
+                    mFailure = "producer " + snapshot.mProducer + " snapshot " + snapshot.mSequence
+                            + " taken after " + mLastSequences[slot];
+                }
+                mLastSequences[slot] = snapshot.mSequence;
+                mTaken.incrementAndGet();
+                if (snapshot.mProducer == MARKER) {
+                    mLastMarker.set(snapshot.mSequence);
+                }
+
+                long endNs = System.nanoTime() + mFrameSpinNs;
+                while (System.nanoTime() < endNs) {
+                    //drawing
+                }
+            }
+        }
+
+        void quit() throws InterruptedException {
+            interrupt();
+            join();
+        }
+    }
+
+    @Test(timeout = TEST_TIMEOUT_MS)
+    public void floodDeliversEveryRoundMarker() throws InterruptedException {
+        final SnapshotMailbox<Snapshot> mailbox = new SnapshotMailbox<>();
+        Consumer consumer = new Consumer(mailbox, FRAME_SPIN_NS);
+        consumer.start();
+
+        final AtomicLong replaced = new AtomicLong();
+        final long[] sequences = new long[PRODUCERS];
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final CountDownLatch start = new CountDownLatch(1);
+                Thread[] producers = new Thread[PRODUCERS];
+                for (int i = 0; i < PRODUCERS; i++) {
+                    final int producer = i;
+                    producers[i] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                start.await();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                            for (int post = 0; post < POSTS_PER_ROUND; post++) {
+                                if (mailbox.post(new Snapshot(producer, sequences[producer]++))) {
+                                    replaced.incrementAndGet();
+                                }
+                            }
+                        }
+                    });
+                    producers[i].start();
+                }
+                start.countDown();
+                for (Thread producer : producers) {
+                    producer.join();
+                }
+
+                //newest snapshot of the round has to reach the consumer
+                if (mailbox.post(new Snapshot(MARKER, round))) {
+                    replaced.incrementAndGet();
+                }
+                assertTrue("marker of round " + round + " not taken in " + HAND_OFF_TIMEOUT_MS + " ms",
+                        awaitValue(consumer.mLastMarker, round));
+            }
+        } finally {
+            consumer.quit();
+        }
+
+        assertNull(consumer.mFailure);
+        long posted = (long) ROUNDS * (PRODUCERS * POSTS_PER_ROUND + 1);
+        assertEquals("snapshots taken or replaced", posted, consumer.mTaken.get() + replaced.get());
+    }
+
+    @Test(timeout = TEST_TIMEOUT_MS)
+    public void pingPongWakesTheConsumerForEveryPost() throws InterruptedException {
+        SnapshotMailbox<Snapshot> mailbox = new SnapshotMailbox<>();
+        Consumer consumer = new Consumer(mailbox, 0);
+        consumer.start();
+
+        try {
+            for (int post = 0; post < PING_PONG_POSTS; post++) {
+                assertFalse("snapshot " + post + " replaced an unread one",
+                        mailbox.post(new Snapshot(MARKER, post)));
+                assertTrue("snapshot " + post + " not taken in " + HAND_OFF_TIMEOUT_MS + " ms",
+                        awaitValue(consumer.mLastMarker, post));
+            }
+        } finally {
+            consumer.quit();
+        }
+
+        assertNull(consumer.mFailure);
+        assertEquals(PING_PONG_POSTS, consumer.mTaken.get());
+    }
+
+    private static boolean awaitValue(AtomicLong value, long expected) {
+        long deadlineNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HAND_OFF_TIMEOUT_MS);
+        while (value.get() != expected) {
+            if (System.nanoTime() > deadlineNs) {
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+}
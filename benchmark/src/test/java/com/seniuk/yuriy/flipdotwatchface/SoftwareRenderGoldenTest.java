@@ -0,0 +1,362 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders every minute of the day with the software renderer, the way the engine does, and
+ * compares the frames pixel by pixel with reference frames drawn from scratch. Interactive
+ * frames are checked at every animation stage of both transition modes, ambient frames with
+ * and without burn-in protection.
+ * <p>
+ * The final frame of every minute is also checked against the checksums in src/test/golden,
+ * so that a change of the rasterizer itself shows up. After an intended change they are
+ * rewritten with: ./gradlew :benchmark:test -PupdateGolden
+ */
+public class SoftwareRenderGoldenTest {
+
+    private static final int SIZE = 320;
+    private static final int BLOCK_SIZE = 20;
+    private static final int CENTER = SIZE / 2;
+    private static final int OFF = 0;
+    private static final int ON = 7;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final float BURN_IN_STROKE_WIDTH = 3f;
+
+    private static final int GRID_LEFT = -3;
+    private static final int GRID_TOP = -5;
+    private static final int GRID_COLUMNS = 7;
+    private static final int GRID_ROWS = 11;
+    private static final int[] DIGIT_OFFSETS_X = new int[]{-3, 1, -3, 1};
+    private static final int[] DIGIT_OFFSETS_Y = new int[]{-5, -5, 1, 1};
+    private static final char[] SYMBOL_CHARS = "0123456789!".toCharArray();
+
+    private static final int AMBIENT_COLOR = 0xFFFFFFFF;
+    private static final int AMBIENT_CUT_COLOR = 0xFF000000;
+
+    private final int[] mSymbolMasks = new int[SYMBOL_CHARS.length];
+    private final int[][] mDigitsOfDay = new int[MINUTES_PER_DAY][TimeDigits.DIGITS_COUNT];
+    private int[] mBackground;
+    private int[][] mFlipdots;
+
+    private final float mRadius = (BLOCK_SIZE - 2) / 2;
+    private final float mCutRadius = mRadius / 3;
+    private final float mCutDeltaPos = (float) (Math.sin(Math.toRadians(45)) * mRadius);
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < SYMBOL_CHARS.length; i++) {
+            mSymbolMasks[i] = GlyphFont3x5.glyph(SYMBOL_CHARS[i]);
+        }
+        for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+            TimeDigits.fill(minuteOfDay / 60, minuteOfDay % 60, mDigitsOfDay[minuteOfDay]);
+        }
+
+        mBackground = new int[SIZE * SIZE];
+        for (int i = 0; i < mBackground.length; i++) {
+            mBackground[i] = 0xFF202020 + (i % SIZE);
+        }
+
+        //translucent discs with soft edges, brighter with every animation stage
+        mFlipdots = new int[ON + 1][BLOCK_SIZE * BLOCK_SIZE];
+        for (int stage = 0; stage <= ON; stage++) {
+            for (int y = 0; y < BLOCK_SIZE; y++) {
+                for (int x = 0; x < BLOCK_SIZE; x++) {
+                    float dx = x + 0.5f - BLOCK_SIZE / 2f;
+                    float dy = y + 0.5f - BLOCK_SIZE / 2f;
+                    float distance = (float) Math.sqrt(dx * dx + dy * dy) / (BLOCK_SIZE / 2f);
+                    int alpha = distance >= 1 ? 0 : (int) (0xFF * Math.min(1f, 4 * (1 - distance)));
+                    mFlipdots[stage][y * BLOCK_SIZE + x] = (alpha << 24) | (stage * 0x20 << 8) | 0x10;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void changedDotsTransitionsMatchFullRedraws() throws IOException {
+        checkGolden("interactive.golden", renderTransitions(false));
+    }
+
+    @Test
+    public void fullCycleTransitionsMatchFullRedraws() throws IOException {
+        //both transitions end on the same frame
+        checkGolden("interactive.golden", renderTransitions(true));
+    }
+
+    @Test
+    public void ambientFramesMatchReferenceCircles() throws IOException {
+        checkGolden("ambient.golden", renderAmbientFrames(false));
+    }
+
+    @Test
+    public void burnInAmbientFramesMatchReferenceRings() throws IOException {
+        checkGolden("ambient-burn-in.golden", renderAmbientFrames(true));
+    }
+
+    /**
+     * Runs the day minute by minute through the planner and the dirty cells, as the engine's
+     * interactive frames do, each stage compared with a frame drawn from scratch.
+     *
+     * @return checksum of the final frame of every minute
+     */
+    private long[] renderTransitions(boolean fullCycle) {
+        DirtyCellTracker cells = new DirtyCellTracker(GRID_COLUMNS, GRID_ROWS);
+        FramePlanner planner = new FramePlanner(mSymbolMasks, GlyphFont3x5.WIDTH, ON,
+                DIGIT_OFFSETS_X, DIGIT_OFFSETS_Y, GRID_LEFT, GRID_TOP, cells);
+        SoftwareDotRenderer renderer = newRenderer();
+        SoftwareDotRenderer reference = newRenderer();
+
+        long[] checksums = new long[MINUTES_PER_DAY];
+        int[] digitsOnDisplay = new int[]{-1, -1, -1, -1};
+        for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+            int[] digitsToDisplay = mDigitsOfDay[minuteOfDay];
+            if (fullCycle) {
+                for (int stage = ON - 1; stage >= OFF; stage--) {
+                    planner.planFullCycleFrame(digitsOnDisplay, digitsToDisplay, stage, true);
+                    drawDirtyCells(cells, renderer);
+                    drawFullCycleReference(reference, digitsOnDisplay, digitsToDisplay, stage, true);
+                    assertSameFrame(renderer, reference, minuteOfDay, -stage);
+                }
+            }
+            for (int stage = OFF + 1; stage <= ON; stage++) {
+                if (fullCycle) {
+                    planner.planFullCycleFrame(digitsOnDisplay, digitsToDisplay, stage, false);
+                    drawDirtyCells(cells, renderer);
+                    drawFullCycleReference(reference, digitsOnDisplay, digitsToDisplay, stage, false);
+                } else {
+                    planner.planChangedDotsFrame(digitsOnDisplay, digitsToDisplay, stage);
+                    drawDirtyCells(cells, renderer);
+                    drawChangedDotsReference(reference, digitsOnDisplay, digitsToDisplay, stage);
+                }
+                assertSameFrame(renderer, reference, minuteOfDay, stage);
+            }
+            checksums[minuteOfDay] = checksum(renderer.getPixels());
+            digitsOnDisplay = digitsToDisplay;
+        }
+        return checksums;
+    }
+
+    private void drawDirtyCells(DirtyCellTracker cells, SoftwareDotRenderer renderer) {
+        int dirtyCount = cells.collectDirtyCells();
+        for (int i = 0; i < dirtyCount; i++) {
+            int cell = cells.getDirtyCell(i);
+            int xPos = CENTER + (cells.getCellColumn(cell) + GRID_LEFT) * BLOCK_SIZE - BLOCK_SIZE / 2;
+            int yPos = CENTER + (cells.getCellRow(cell) + GRID_TOP) * BLOCK_SIZE - BLOCK_SIZE / 2;
+
+            renderer.drawBackground(xPos, yPos, xPos + BLOCK_SIZE, yPos + BLOCK_SIZE);
+            int sprite = cells.getPlannedSprite(cell);
+            if (sprite != DirtyCellTracker.EMPTY) {
+                renderer.drawFlipdot(sprite, xPos, yPos);
+            }
+        }
+        cells.commit();
+    }
+
+    /**
+     * Dots in both digits stay on, dots only in the new one flip on, dots only in the old one
+     * flip off.
+     */
+    private void drawChangedDotsReference(SoftwareDotRenderer reference, int[] digitsOnDisplay,
+                                          int[] digitsToDisplay, int stage) {
+        reference.drawBackground(0, 0, SIZE, SIZE);
+        for (int digit = 0; digit < TimeDigits.DIGITS_COUNT; digit++) {
+            int fromMask = digitsOnDisplay[digit] >= 0 ? mSymbolMasks[digitsOnDisplay[digit]] : 0;
+            int toMask = mSymbolMasks[digitsToDisplay[digit]];
+            for (int bit = 0; bit < GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT; bit++) {
+                boolean from = (fromMask & (1 << bit)) != 0;
+                boolean to = (toMask & (1 << bit)) != 0;
+                if (from && to) {
+                    drawReferenceDot(reference, digit, bit, ON);
+                } else if (to) {
+                    drawReferenceDot(reference, digit, bit, stage);
+                } else if (from) {
+                    drawReferenceDot(reference, digit, bit, ON - stage);
+                }
+            }
+        }
+    }
+
+    /**
+     * The old digits flip off on the reverse pass, the new ones flip on on the forward pass.
+     */
+    private void drawFullCycleReference(SoftwareDotRenderer reference, int[] digitsOnDisplay,
+                                        int[] digitsToDisplay, int stage, boolean reverse) {
+        reference.drawBackground(0, 0, SIZE, SIZE);
+        for (int digit = 0; digit < TimeDigits.DIGITS_COUNT; digit++) {
+            int symbol = reverse && digitsOnDisplay[digit] >= 0 ? digitsOnDisplay[digit] : digitsToDisplay[digit];
+            for (int bit = 0; bit < GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT; bit++) {
+                if ((mSymbolMasks[symbol] & (1 << bit)) != 0) {
+                    drawReferenceDot(reference, digit, bit, stage);
+                }
+            }
+        }
+    }
+
+    private void drawReferenceDot(SoftwareDotRenderer reference, int digit, int bit, int stage) {
+        if (stage == OFF) {
+            return;
+        }
+        int xPos = CENTER + (DIGIT_OFFSETS_X[digit] + bit % GlyphFont3x5.WIDTH) * BLOCK_SIZE - BLOCK_SIZE / 2;
+        int yPos = CENTER + (DIGIT_OFFSETS_Y[digit] + bit / GlyphFont3x5.WIDTH) * BLOCK_SIZE - BLOCK_SIZE / 2;
+        reference.drawFlipdot(stage, xPos, yPos);
+    }
+
+    /**
+     * Draws the ambient face of every minute the way the engine lays out ambient digits and
+     * compares it with circles rasterized pixel by pixel.
+     *
+     * @return checksum of every frame
+     */
+    private long[] renderAmbientFrames(boolean burnInProtection) {
+        DirtyCellTracker cells = new DirtyCellTracker(GRID_COLUMNS, GRID_ROWS);
+        FramePlanner planner = new FramePlanner(mSymbolMasks, GlyphFont3x5.WIDTH, ON,
+                DIGIT_OFFSETS_X, DIGIT_OFFSETS_Y, GRID_LEFT, GRID_TOP, cells);
+        SoftwareDotRenderer renderer = newRenderer();
+        renderer.setAmbientColors(AMBIENT_COLOR, AMBIENT_CUT_COLOR);
+        renderer.setAmbientFlipdot(mRadius, mCutRadius, mCutDeltaPos, burnInProtection, BURN_IN_STROKE_WIDTH);
+
+        int[] dotsX = new int[GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT];
+        int[] dotsY = new int[GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT];
+        int[] expected = new int[SIZE * SIZE];
+        long[] checksums = new long[MINUTES_PER_DAY];
+        for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+            planner.planAmbientFrame(mDigitsOfDay[minuteOfDay]);
+            renderer.clear(AMBIENT_CUT_COLOR);
+            for (int digit = 0; digit < TimeDigits.DIGITS_COUNT; digit++) {
+                int symbolMask = mSymbolMasks[planner.getPlannedSymbol(digit)];
+                int dotsCount = FramePlanner.collectDots(symbolMask, GlyphFont3x5.WIDTH, dotsX, dotsY);
+                for (int i = 0; i < dotsCount; i++) {
+                    renderer.drawAmbientFlipdot(
+                            ambientDotCenter(DIGIT_OFFSETS_X[digit] + dotsX[i]),
+                            ambientDotCenter(DIGIT_OFFSETS_Y[digit] + dotsY[i]));
+                }
+            }
+
+            drawAmbientReference(expected, mDigitsOfDay[minuteOfDay], burnInProtection);
+            int different = renderer.countDifferentPixels(expected, 0);
+            assertEquals("ambient " + formatMinute(minuteOfDay) + ": different pixels", 0, different);
+            checksums[minuteOfDay] = checksum(renderer.getPixels());
+        }
+        return checksums;
+    }
+
+    //center of a dot cell, the cell starts half a cell before it
+    private static int ambientDotCenter(int dotOffset) {
+        return CENTER + dotOffset * BLOCK_SIZE;
+    }
+
+    /**
+     * A pixel is lit when its center is inside the dot circle and outside the cut, or inside
+     * the ring in burn-in protection mode.
+     */
+    private void drawAmbientReference(int[] pixels, int[] digits, boolean burnInProtection) {
+        Arrays.fill(pixels, AMBIENT_CUT_COLOR);
+        float halfStroke = BURN_IN_STROKE_WIDTH / 2f;
+        for (int digit = 0; digit < TimeDigits.DIGITS_COUNT; digit++) {
+            int symbolMask = mSymbolMasks[digits[digit]];
+            for (int bit = 0; bit < GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT; bit++) {
+                if ((symbolMask & (1 << bit)) == 0) {
+                    continue;
+                }
+                int centerX = ambientDotCenter(DIGIT_OFFSETS_X[digit] + bit % GlyphFont3x5.WIDTH);
+                int centerY = ambientDotCenter(DIGIT_OFFSETS_Y[digit] + bit / GlyphFont3x5.WIDTH);
+                for (int y = centerY - BLOCK_SIZE; y < centerY + BLOCK_SIZE; y++) {
+                    for (int x = centerX - BLOCK_SIZE; x < centerX + BLOCK_SIZE; x++) {
+                        if (x < 0 || y < 0 || x >= SIZE || y >= SIZE) {
+                            continue;
+                        }
+                        float distance2 = distance2(x, y, centerX, centerY);
+                        if (burnInProtection) {
+                            float inner = mRadius / 2f - halfStroke;
+                            float outer = mRadius / 2f + halfStroke;
+                            if (distance2 >= inner * inner && distance2 <= outer * outer) {
+                                pixels[y * SIZE + x] = AMBIENT_COLOR;
+                            }
+                        } else if (distance2(x, y, centerX - mCutDeltaPos, centerY - mCutDeltaPos)
+                                <= mCutRadius * mCutRadius) {
+                            pixels[y * SIZE + x] = AMBIENT_CUT_COLOR;
+                        } else if (distance2 <= mRadius * mRadius) {
+                            pixels[y * SIZE + x] = AMBIENT_COLOR;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static float distance2(int x, int y, float centerX, float centerY) {
+        float dx = x + 0.5f - centerX;
+        float dy = y + 0.5f - centerY;
+        return dx * dx + dy * dy;
+    }
+
+    private SoftwareDotRenderer newRenderer() {
+        return new SoftwareDotRenderer(SIZE, SIZE, mBackground, mFlipdots, BLOCK_SIZE, BLOCK_SIZE);
+    }
+
+    private static void assertSameFrame(SoftwareDotRenderer renderer, SoftwareDotRenderer reference,
+                                        int minuteOfDay, int stage) {
+        int different = renderer.countDifferentPixels(reference.getPixels(), 0);
+        assertEquals(formatMinute(minuteOfDay) + " stage " + stage + ": different pixels", 0, different);
+    }
+
+    private static long checksum(int[] pixels) {
+        CRC32 crc = new CRC32();
+        for (int pixel : pixels) {
+            crc.update(pixel >>> 24);
+            crc.update(pixel >>> 16);
+            crc.update(pixel >>> 8);
+            crc.update(pixel);
+        }
+        return crc.getValue();
+    }
+
+    private static String formatMinute(int minuteOfDay) {
+        return String.format(Locale.US, "%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    /**
+     * Compares the checksums with a golden file, a line "HH:MM checksum" per minute, or rewrites
+     * the file when golden.update is set.
+     */
+    private static void checkGolden(String name, long[] checksums) throws IOException {
+        File file = new File(System.getProperty("golden.dir", "src/test/golden"), name);
+        if (Boolean.getBoolean("golden.update")) {
+            PrintWriter writer = new PrintWriter(new FileWriter(file));
+            try {
+                for (int minuteOfDay = 0; minuteOfDay < checksums.length; minuteOfDay++) {
+                    writer.println(formatMinute(minuteOfDay) + " " + Long.toHexString(checksums[minuteOfDay]));
+                }
+            } finally {
+                writer.close();
+            }
+            return;
+        }
+
+        assertTrue("missing golden file " + file, file.isFile());
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (int minuteOfDay = 0; minuteOfDay < checksums.length; minuteOfDay++) {
+                String[] words = reader.readLine().split(" ");
+                assertEquals(name + " minute", formatMinute(minuteOfDay), words[0]);
+                assertEquals(name + " " + words[0] + " frame differs from golden",
+                        Long.parseLong(words[1], 16), checksums[minuteOfDay]);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.content.SharedPreferences;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Base64;
+import android.widget.CompoundButton;
+import android.widget.RadioGroup;
+import android.widget.SeekBar;
+import android.widget.Switch;
+import android.widget.TextView;
+
+/**
+ * Companion settings of the watch face. Every edit is kept on the phone and synced to the watch,
+ * edits in quick succession are sent as one batch by {@link FaceConfigSync}.
+ */
+public class FaceConfigActivity extends AppCompatActivity {
+
+    private static final String PREFERENCES_NAME = "face_config";
+    private static final String PREFERENCE_CONFIG = "config";
+
+    //colors of the radio buttons, in the order of mColorButtonIds
+    private static final int[] FLIPDOT_COLORS = new int[]{
+            Color.GREEN, Color.rgb(0xFF, 0xB0, 0x00), Color.RED, Color.WHITE
+    };
+    private final int[] mColorButtonIds = new int[]{
+            R.id.color_green, R.id.color_amber, R.id.color_red, R.id.color_white
+    };
+
+    private FaceConfig mConfig;
+    private FaceConfigSync mSync;
+    private TextView mStepDurationLabel;
+    private TextView mStrokeWidthLabel;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_face_config);
+
+        mConfig = loadConfig();
+        final Handler handler = new Handler();
+        mSync = new FaceConfigSync(new WearableDataLayer(this), new FaceConfigSync.Scheduler() {
+            @Override
+            public void postDelayed(Runnable runnable, long delayMs) {
+                handler.postDelayed(runnable, delayMs);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable runnable) {
+                handler.removeCallbacks(runnable);
+            }
+        });
+
+        RadioGroup colorGroup = (RadioGroup) findViewById(R.id.flipdot_color);
+        for (int i = 0; i < FLIPDOT_COLORS.length; i++) {
+            if (FLIPDOT_COLORS[i] == mConfig.getFlipdotColor()) {
+                colorGroup.check(mColorButtonIds[i]);
+            }
+        }
+        colorGroup.setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(RadioGroup group, int checkedId) {
+                for (int i = 0; i < mColorButtonIds.length; i++) {
+                    if (mColorButtonIds[i] == checkedId) {
+                        mConfig.setFlipdotColor(FLIPDOT_COLORS[i]);
+                        onConfigEdited();
+                    }
+                }
+            }
+        });
+
+        mStepDurationLabel = (TextView) findViewById(R.id.step_duration_label);
+        SeekBar stepDuration = (SeekBar) findViewById(R.id.step_duration);
+        stepDuration.setMax(FaceConfig.MAX_STEP_DURATION_MS - FaceConfig.MIN_STEP_DURATION_MS);
+        stepDuration.setProgress(mConfig.getStepDurationMs() - FaceConfig.MIN_STEP_DURATION_MS);
+        stepDuration.setOnSeekBarChangeListener(new SeekBarListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    mConfig.setStepDurationMs(FaceConfig.MIN_STEP_DURATION_MS + progress);
+                    onConfigEdited();
+                }
+            }
+        });
+
+        mStrokeWidthLabel = (TextView) findViewById(R.id.burn_in_stroke_width_label);
+        SeekBar strokeWidth = (SeekBar) findViewById(R.id.burn_in_stroke_width);
+        strokeWidth.setMax(FaceConfig.MAX_BURN_IN_STROKE_WIDTH - FaceConfig.MIN_BURN_IN_STROKE_WIDTH);
+        strokeWidth.setProgress(Math.round(mConfig.getBurnInStrokeWidth()) - FaceConfig.MIN_BURN_IN_STROKE_WIDTH);
+        strokeWidth.setOnSeekBarChangeListener(new SeekBarListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    mConfig.setBurnInStrokeWidth(FaceConfig.MIN_BURN_IN_STROKE_WIDTH + progress);
+                    onConfigEdited();
+                }
+            }
+        });
+
+        Switch matrix = (Switch) findViewById(R.id.display_matrix);
+        matrix.setChecked(mConfig.getDisplayMode() == FaceConfig.DisplayMode.MATRIX);
+        matrix.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean isChecked) {
+                mConfig.setDisplayMode(isChecked ? FaceConfig.DisplayMode.MATRIX : FaceConfig.DisplayMode.DIGITS);
+                onConfigEdited();
+            }
+        });
+
+        Switch changedDots = (Switch) findViewById(R.id.transition_changed_dots);
+        changedDots.setChecked(mConfig.getTransitionMode() == FaceConfig.TransitionMode.CHANGED_DOTS);
+        changedDots.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean isChecked) {
+                mConfig.setTransitionMode(isChecked ? FaceConfig.TransitionMode.CHANGED_DOTS
+                        : FaceConfig.TransitionMode.FULL_CYCLE);
+                onConfigEdited();
+            }
+        });
+
+        Switch seconds = (Switch) findViewById(R.id.show_seconds);
+        seconds.setChecked(mConfig.isShowSeconds());
+        seconds.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean isChecked) {
+                mConfig.setShowSeconds(isChecked);
+                onConfigEdited();
+            }
+        });
+
+        updateLabels();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mSync.connect();
+        //an edit that could not be sent before is sent again, an unchanged item doesn't sync
+        mSync.scheduleSync(mConfig);
+    }
+
+    @Override
+    protected void onStop() {
+        mSync.disconnect();
+        super.onStop();
+    }
+
+    private void onConfigEdited() {
+        updateLabels();
+        saveConfig();
+        mSync.scheduleSync(mConfig);
+    }
+
+    private void updateLabels() {
+        mStepDurationLabel.setText(getString(R.string.config_step_duration, mConfig.getStepDurationMs()));
+        mStrokeWidthLabel.setText(getString(R.string.config_burn_in_stroke_width,
+                Math.round(mConfig.getBurnInStrokeWidth())));
+    }
+
+    private FaceConfig loadConfig() {
+        SharedPreferences preferences = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+        String encoded = preferences.getString(PREFERENCE_CONFIG, null);
+        FaceConfig config = encoded != null ? FaceConfig.fromByteArray(Base64.decode(encoded, Base64.NO_WRAP)) : null;
+        if (config == null) {
+            config = new FaceConfig();
+        }
+
+        //every field is synced, the ones never edited with the defaults of the face
+        config.setDefaults();
+        return config;
+    }
+
+    private void saveConfig() {
+        getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE).edit()
+                .putString(PREFERENCE_CONFIG, Base64.encodeToString(mConfig.toByteArray(), Base64.NO_WRAP))
+                .apply();
+    }
+
+    private abstract static class SeekBarListener implements SeekBar.OnSeekBarChangeListener {
+        @Override
+        public void onStartTrackingTouch(SeekBar seekBar) {
+        }
+
+        @Override
+        public void onStopTrackingTouch(SeekBar seekBar) {
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Sends the face config to the watch. Edits coming in quick succession, like the moves of a
+ * slider, are coalesced into one data item write, so the watch is woken once per batch.
+ * A pending config is sent right away when the sync is disconnected.
+ */
+final class FaceConfigSync {
+
+    static final long COALESCE_DELAY_MS = 750;
+
+    /**
+     * Data Layer connection of the phone, see {@link WearableDataLayer}.
+     */
+    interface DataLayer {
+        interface Callback {
+            void onConnected();
+        }
+
+        void connect(Callback callback);
+
+        void disconnect();
+
+        boolean isConnected();
+
+        /**
+         * Writes the data item, it is delivered to the watch right away.
+         */
+        void putUrgentDataItem(String path, byte[] data);
+    }
+
+    /**
+     * Runs the send of a batch later on the thread of the edits, a Handler on the phone.
+     */
+    interface Scheduler {
+        void postDelayed(Runnable runnable, long delayMs);
+
+        void removeCallbacks(Runnable runnable);
+    }
+
+    private final DataLayer mDataLayer;
+    private final Scheduler mScheduler;
+    //last edit not sent yet, null when in sync
+    private FaceConfig mPendingConfig;
+    private boolean mSendScheduled;
+
+    private final Runnable mSendRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSendScheduled = false;
+            send();
+        }
+    };
+
+    private final DataLayer.Callback mConnectionCallback = new DataLayer.Callback() {
+        @Override
+        public void onConnected() {
+            //an edit in progress is sent with its batch
+            if (!mSendScheduled) {
+                send();
+            }
+        }
+    };
+
+    FaceConfigSync(DataLayer dataLayer, Scheduler scheduler) {
+        mDataLayer = dataLayer;
+        mScheduler = scheduler;
+    }
+
+    void connect() {
+        mDataLayer.connect(mConnectionCallback);
+    }
+
+    void disconnect() {
+        mScheduler.removeCallbacks(mSendRunnable);
+        mSendScheduled = false;
+        send();
+        mDataLayer.disconnect();
+    }
+
+    /**
+     * Sends the config once no other edit comes within the coalescing delay.
+     */
+    void scheduleSync(FaceConfig config) {
+        mPendingConfig = new FaceConfig(config);
+        mScheduler.removeCallbacks(mSendRunnable);
+        mScheduler.postDelayed(mSendRunnable, COALESCE_DELAY_MS);
+        mSendScheduled = true;
+    }
+
+    private void send() {
+        //sent on connect otherwise
+        if (mPendingConfig == null || !mDataLayer.isConnected()) {
+            return;
+        }
+        //the edit is shown on the watch right away, not on the next batched sync
+        mDataLayer.putUrgentDataItem(FaceConfig.DATA_PATH, mPendingConfig.toByteArray());
+        mPendingConfig = null;
+    }
+}
@@ -0,0 +1,57 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+/**
+ * Data Layer of {@link FaceConfigSync} on the Wearable API.
+ */
+final class WearableDataLayer implements FaceConfigSync.DataLayer, GoogleApiClient.ConnectionCallbacks {
+
+    private final GoogleApiClient mClient;
+    private Callback mCallback;
+
+    WearableDataLayer(Context context) {
+        mClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .build();
+    }
+
+    @Override
+    public void connect(Callback callback) {
+        mCallback = callback;
+        mClient.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        mClient.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mClient.isConnected();
+    }
+
+    @Override
+    public void putUrgentDataItem(String path, byte[] data) {
+        PutDataRequest request = PutDataRequest.create(path)
+                .setData(data)
+                .setUrgent();
+        Wearable.DataApi.putDataItem(mClient, request);
+    }
+
+    @Override
+    public void onConnected(Bundle connectionHint) {
+        mCallback.onConnected();
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+    }
+}
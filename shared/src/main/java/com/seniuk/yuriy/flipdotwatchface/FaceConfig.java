@@ -0,0 +1,278 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Look of the face set on the phone, synced to the watch as a single data item. Only the fields
+ * that are set are written, in the order of their bits after a version byte and the field mask,
+ * so a blob carrying fields added later is still read by an older watch.
+ * <p>
+ * The version changes only when an existing field changes its encoding, new fields take the
+ * next bit.
+ */
+final class FaceConfig {
+
+    static final String DATA_PATH = "/flipdot/config";
+
+    static final int VERSION = 1;
+
+    static final class Field {
+        //ARGB color of the lit dots
+        static final int FLIPDOT_COLOR = 1;
+        //duration of a flip animation step at full pace
+        static final int STEP_DURATION_MS = 1 << 1;
+        //stroke of the ambient dots with burn-in protection
+        static final int BURN_IN_STROKE_WIDTH = 1 << 2;
+        //one of the DisplayMode values
+        static final int DISPLAY_MODE = 1 << 3;
+        //one of the TransitionMode values
+        static final int TRANSITION_MODE = 1 << 4;
+        //seconds row between the hours and the minutes
+        static final int SHOW_SECONDS = 1 << 5;
+
+        static final int ALL = (1 << 6) - 1;
+    }
+
+    static final class DisplayMode {
+        //four digits of the time over the screen
+        static final int DIGITS = 0;
+        //dot matrix of small dots sized to the screen, time, date, battery and unread count
+        static final int MATRIX = 1;
+    }
+
+    static final class TransitionMode {
+        //all lit dots flip off with the old digits and on with the new ones
+        static final int FULL_CYCLE = 0;
+        //only dots that differ between the old and new digits flip, once
+        static final int CHANGED_DOTS = 1;
+    }
+
+    //look of the face until a field is set on the phone, Color.GREEN
+    static final int DEFAULT_FLIPDOT_COLOR = 0xFF00FF00;
+    static final int DEFAULT_STEP_DURATION_MS = 50;
+    static final float DEFAULT_BURN_IN_STROKE_WIDTH = 3f;
+    static final int DEFAULT_DISPLAY_MODE = DisplayMode.DIGITS;
+    static final int DEFAULT_TRANSITION_MODE = TransitionMode.CHANGED_DOTS;
+    static final boolean DEFAULT_SHOW_SECONDS = false;
+
+    //ranges of the settings on the phone, a blob out of them is brought back in by the watch
+    static final int MIN_STEP_DURATION_MS = 20;
+    static final int MAX_STEP_DURATION_MS = 150;
+    static final int MIN_BURN_IN_STROKE_WIDTH = 1;
+    static final int MAX_BURN_IN_STROKE_WIDTH = 6;
+
+    private static final int MAX_SIZE = 2 + 4 + 2 + 4 + 1 + 1 + 1;
+
+    private int mFields;
+    private int mFlipdotColor;
+    private int mStepDurationMs;
+    private float mBurnInStrokeWidth;
+    private int mDisplayMode;
+    private int mTransitionMode;
+    private boolean mShowSeconds;
+
+    FaceConfig() {
+    }
+
+    FaceConfig(FaceConfig config) {
+        mFields = config.mFields;
+        mFlipdotColor = config.mFlipdotColor;
+        mStepDurationMs = config.mStepDurationMs;
+        mBurnInStrokeWidth = config.mBurnInStrokeWidth;
+        mDisplayMode = config.mDisplayMode;
+        mTransitionMode = config.mTransitionMode;
+        mShowSeconds = config.mShowSeconds;
+    }
+
+    boolean has(int field) {
+        return (mFields & field) != 0;
+    }
+
+    int getFlipdotColor() {
+        return mFlipdotColor;
+    }
+
+    void setFlipdotColor(int color) {
+        mFlipdotColor = color;
+        mFields |= Field.FLIPDOT_COLOR;
+    }
+
+    int getStepDurationMs() {
+        return mStepDurationMs;
+    }
+
+    void setStepDurationMs(int stepDurationMs) {
+        mStepDurationMs = stepDurationMs;
+        mFields |= Field.STEP_DURATION_MS;
+    }
+
+    float getBurnInStrokeWidth() {
+        return mBurnInStrokeWidth;
+    }
+
+    void setBurnInStrokeWidth(float strokeWidth) {
+        mBurnInStrokeWidth = strokeWidth;
+        mFields |= Field.BURN_IN_STROKE_WIDTH;
+    }
+
+    int getDisplayMode() {
+        return mDisplayMode;
+    }
+
+    void setDisplayMode(int displayMode) {
+        mDisplayMode = displayMode;
+        mFields |= Field.DISPLAY_MODE;
+    }
+
+    int getTransitionMode() {
+        return mTransitionMode;
+    }
+
+    void setTransitionMode(int transitionMode) {
+        mTransitionMode = transitionMode;
+        mFields |= Field.TRANSITION_MODE;
+    }
+
+    boolean isShowSeconds() {
+        return mShowSeconds;
+    }
+
+    void setShowSeconds(boolean showSeconds) {
+        mShowSeconds = showSeconds;
+        mFields |= Field.SHOW_SECONDS;
+    }
+
+    /**
+     * Sets the fields that are not set to the defaults of the face.
+     */
+    void setDefaults() {
+        if (!has(Field.FLIPDOT_COLOR)) {
+            setFlipdotColor(DEFAULT_FLIPDOT_COLOR);
+        }
+        if (!has(Field.STEP_DURATION_MS)) {
+            setStepDurationMs(DEFAULT_STEP_DURATION_MS);
+        }
+        if (!has(Field.BURN_IN_STROKE_WIDTH)) {
+            setBurnInStrokeWidth(DEFAULT_BURN_IN_STROKE_WIDTH);
+        }
+        if (!has(Field.DISPLAY_MODE)) {
+            setDisplayMode(DEFAULT_DISPLAY_MODE);
+        }
+        if (!has(Field.TRANSITION_MODE)) {
+            setTransitionMode(DEFAULT_TRANSITION_MODE);
+        }
+        if (!has(Field.SHOW_SECONDS)) {
+            setShowSeconds(DEFAULT_SHOW_SECONDS);
+        }
+    }
+
+    /**
+     * @return fields set here that are not set in the previous config or have another value
+     */
+    int getChangedFields(FaceConfig previous) {
+        int changed = mFields & ~previous.mFields;
+        int common = mFields & previous.mFields;
+        if ((common & Field.FLIPDOT_COLOR) != 0 && mFlipdotColor != previous.mFlipdotColor) {
+            changed |= Field.FLIPDOT_COLOR;
+        }
+        if ((common & Field.STEP_DURATION_MS) != 0 && mStepDurationMs != previous.mStepDurationMs) {
+            changed |= Field.STEP_DURATION_MS;
+        }
+        if ((common & Field.BURN_IN_STROKE_WIDTH) != 0 && mBurnInStrokeWidth != previous.mBurnInStrokeWidth) {
+            changed |= Field.BURN_IN_STROKE_WIDTH;
+        }
+        if ((common & Field.DISPLAY_MODE) != 0 && mDisplayMode != previous.mDisplayMode) {
+            changed |= Field.DISPLAY_MODE;
+        }
+        if ((common & Field.TRANSITION_MODE) != 0 && mTransitionMode != previous.mTransitionMode) {
+            changed |= Field.TRANSITION_MODE;
+        }
+        if ((common & Field.SHOW_SECONDS) != 0 && mShowSeconds != previous.mShowSeconds) {
+            changed |= Field.SHOW_SECONDS;
+        }
+        return changed;
+    }
+
+    byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_SIZE);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) mFields);
+        if (has(Field.FLIPDOT_COLOR)) {
+            buffer.putInt(mFlipdotColor);
+        }
+        if (has(Field.STEP_DURATION_MS)) {
+            buffer.putShort((short) mStepDurationMs);
+        }
+        if (has(Field.BURN_IN_STROKE_WIDTH)) {
+            buffer.putFloat(mBurnInStrokeWidth);
+        }
+        if (has(Field.DISPLAY_MODE)) {
+            buffer.put((byte) mDisplayMode);
+        }
+        if (has(Field.TRANSITION_MODE)) {
+            buffer.put((byte) mTransitionMode);
+        }
+        if (has(Field.SHOW_SECONDS)) {
+            buffer.put((byte) (mShowSeconds ? 1 : 0));
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Values are checked as the watch applies them: durations and widths are clamped to the
+     * ranges of the phone, unknown modes are read as the defaults and a width that is not a
+     * number leaves its field unset.
+     *
+     * @return config read from the blob, null if the blob is of another version or truncated
+     */
+    static FaceConfig fromByteArray(byte[] data) {
+        if (data == null || data.length < 2 || data[0] != VERSION) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(1);
+        //fields of later versions follow the known ones and are left unread
+        int fields = buffer.get() & Field.ALL;
+
+        FaceConfig config = new FaceConfig();
+        try {
+            if ((fields & Field.FLIPDOT_COLOR) != 0) {
+                config.setFlipdotColor(buffer.getInt());
+            }
+            if ((fields & Field.STEP_DURATION_MS) != 0) {
+                config.setStepDurationMs(clamp(buffer.getShort() & 0xFFFF,
+                        MIN_STEP_DURATION_MS, MAX_STEP_DURATION_MS));
+            }
+            if ((fields & Field.BURN_IN_STROKE_WIDTH) != 0) {
+                float strokeWidth = buffer.getFloat();
+                if (!Float.isNaN(strokeWidth) && !Float.isInfinite(strokeWidth)) {
+                    config.setBurnInStrokeWidth(Math.max(MIN_BURN_IN_STROKE_WIDTH,
+                            Math.min(MAX_BURN_IN_STROKE_WIDTH, strokeWidth)));
+                }
+            }
+            if ((fields & Field.DISPLAY_MODE) != 0) {
+                int displayMode = buffer.get();
+                config.setDisplayMode(displayMode == DisplayMode.DIGITS || displayMode == DisplayMode.MATRIX
+                        ? displayMode : DEFAULT_DISPLAY_MODE);
+            }
+            if ((fields & Field.TRANSITION_MODE) != 0) {
+                int transitionMode = buffer.get();
+                config.setTransitionMode(transitionMode == TransitionMode.FULL_CYCLE
+                        || transitionMode == TransitionMode.CHANGED_DOTS ? transitionMode : DEFAULT_TRANSITION_MODE);
+            }
+            if ((fields & Field.SHOW_SECONDS) != 0) {
+                config.setShowSeconds(buffer.get() != 0);
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        return config;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,147 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Picks how the flip animation runs from the power state and the measured frame times. Reduced
+ * animation takes fewer and longer steps, instant animation jumps straight to the end index so
+ * a transition costs a single frame.
+ * <p>
+ * Thresholds have a margin between entering and leaving a profile, so that the profile doesn't
+ * flap on a battery level or frame time hovering around a threshold.
+ */
+final class AnimationGovernor {
+
+    static final class Profile {
+        static final int FULL = 0;
+        static final int REDUCED = 1;
+        static final int INSTANT = 2;
+    }
+
+    private static final int INSTANT_BATTERY_LEVEL = 5;
+    private static final int REDUCED_BATTERY_LEVEL = 20;
+    private static final int LEVEL_MARGIN = 5;
+
+    //frame time average as a share of the full step duration
+    private static final int SLOW_FRAME_PERCENT = 50;
+    private static final int FAST_FRAME_PERCENT = 25;
+    //weight of a new frame time in the average, 1/8
+    private static final int FRAME_TIME_AVERAGE_SHIFT = 3;
+
+    private long mFullStepMs;
+    private long mReducedStepMs;
+    private final int mReducedIndexStride;
+    private final int mInstantIndexStride;
+
+    private boolean mPowerSaveMode;
+    private boolean mCharging;
+    private int mBatteryLevel = 100;
+    private long mAverageFrameTimeUs;
+    private boolean mSlowFrames;
+
+    private int mProfile = Profile.FULL;
+
+    /**
+     * @param indicesCount sprite indices an animation runs through, instant animation covers
+     *                     them in one step
+     */
+    AnimationGovernor(long fullStepMs, long reducedStepMs, int reducedIndexStride, int indicesCount) {
+        mFullStepMs = fullStepMs;
+        mReducedStepMs = reducedStepMs;
+        mReducedIndexStride = reducedIndexStride;
+        mInstantIndexStride = indicesCount;
+    }
+
+    /**
+     * Changes the step durations, taken by the next transition.
+     */
+    void setStepDurationsMs(long fullStepMs, long reducedStepMs) {
+        mFullStepMs = fullStepMs;
+        mReducedStepMs = reducedStepMs;
+    }
+
+    void setPowerSaveMode(boolean powerSaveMode) {
+        mPowerSaveMode = powerSaveMode;
+        updateProfile();
+    }
+
+    void setBatteryState(int levelPercent, boolean charging) {
+        mBatteryLevel = levelPercent;
+        mCharging = charging;
+        updateProfile();
+    }
+
+    void recordFrameTimeUs(long frameTimeUs) {
+        if (mAverageFrameTimeUs == 0) {
+            mAverageFrameTimeUs = frameTimeUs;
+        } else {
+            mAverageFrameTimeUs += (frameTimeUs - mAverageFrameTimeUs) >> FRAME_TIME_AVERAGE_SHIFT;
+        }
+
+        long stepUs = mFullStepMs * 1000;
+        if (!mSlowFrames && mAverageFrameTimeUs * 100 > stepUs * SLOW_FRAME_PERCENT) {
+            mSlowFrames = true;
+            updateProfile();
+        } else if (mSlowFrames && mAverageFrameTimeUs * 100 < stepUs * FAST_FRAME_PERCENT) {
+            mSlowFrames = false;
+            updateProfile();
+        }
+    }
+
+    private void updateProfile() {
+        if (mPowerSaveMode) {
+            mProfile = Profile.INSTANT;
+            return;
+        }
+
+        boolean onBattery = !mCharging;
+        int margin = 0;
+        if (mProfile == Profile.INSTANT) {
+            margin = LEVEL_MARGIN;
+        }
+        if (onBattery && mBatteryLevel <= INSTANT_BATTERY_LEVEL + margin) {
+            mProfile = Profile.INSTANT;
+            return;
+        }
+
+        margin = mProfile != Profile.FULL ? LEVEL_MARGIN : 0;
+        if (mSlowFrames || (onBattery && mBatteryLevel <= REDUCED_BATTERY_LEVEL + margin)) {
+            mProfile = Profile.REDUCED;
+            return;
+        }
+
+        mProfile = Profile.FULL;
+    }
+
+    int getProfile() {
+        return mProfile;
+    }
+
+    long getStepDurationMs() {
+        return mProfile == Profile.REDUCED ? mReducedStepMs : mFullStepMs;
+    }
+
+    int getIndexStride() {
+        switch (mProfile) {
+            case Profile.REDUCED:
+                return mReducedIndexStride;
+            case Profile.INSTANT:
+                return mInstantIndexStride;
+            default:
+                return 1;
+        }
+    }
+
+    long getAverageFrameTimeUs() {
+        return mAverageFrameTimeUs;
+    }
+
+    static String getProfileName(int profile) {
+        switch (profile) {
+            case Profile.REDUCED:
+                return "reduced";
+            case Profile.INSTANT:
+                return "instant";
+            default:
+                return "full";
+        }
+    }
+}
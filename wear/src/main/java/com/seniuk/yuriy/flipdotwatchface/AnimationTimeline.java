@@ -0,0 +1,126 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Flip animation progress derived from the time elapsed since the animation started, so late
+ * frames skip the stages they missed and extra frames don't speed the animation up.
+ * <p>
+ * An animation runs from one sprite index to another, by the index stride per step. The first
+ * step is shown right away, the end index is reached after (steps - 1) step durations.
+ */
+final class AnimationTimeline {
+
+    interface Clock {
+        long uptimeMillis();
+    }
+
+    private final Clock mClock;
+    private long mStepDurationMs;
+    private int mIndexStride = 1;
+
+    private int mFromIndex;
+    private int mToIndex;
+    private long mStartTimeMs;
+
+    //sampled by update()
+    private long mNowMs;
+    private int mAnimationIndex;
+    private boolean mFinished = true;
+
+    AnimationTimeline(Clock clock, long stepDurationMs) {
+        mClock = clock;
+        mStepDurationMs = stepDurationMs;
+    }
+
+    /**
+     * Sets the step duration and how many indices a step advances, for animations started
+     * after this call.
+     */
+    void setPace(long stepDurationMs, int indexStride) {
+        mStepDurationMs = stepDurationMs;
+        mIndexStride = indexStride;
+    }
+
+    /**
+     * Stops any animation and rests at the given index.
+     */
+    void reset(int animationIndex) {
+        mFromIndex = animationIndex;
+        mToIndex = animationIndex;
+        mAnimationIndex = animationIndex;
+        mFinished = true;
+    }
+
+    /**
+     * Starts an animation now.
+     */
+    void start(int fromIndex, int toIndex) {
+        startAt(fromIndex, toIndex, mClock.uptimeMillis());
+    }
+
+    /**
+     * Starts an animation one step after the previous one reached its end index, so that time
+     * lost by a late frame is not added to the new animation.
+     */
+    void chain(int fromIndex, int toIndex) {
+        startAt(fromIndex, toIndex, getEndTimeMs() + mStepDurationMs);
+    }
+
+    private void startAt(int fromIndex, int toIndex, long startTimeMs) {
+        mFromIndex = fromIndex;
+        mToIndex = toIndex;
+        mStartTimeMs = startTimeMs;
+        update();
+    }
+
+    /**
+     * Samples the clock, the animation index and the finished state are taken from this moment.
+     */
+    void update() {
+        mNowMs = mClock.uptimeMillis();
+
+        long stepsDone = getStepsDone();
+        if (stepsDone >= getStepsCount()) {
+            mAnimationIndex = mToIndex;
+            mFinished = true;
+        } else {
+            mAnimationIndex = mFromIndex + (int) stepsDone * mIndexStride * Integer.signum(mToIndex - mFromIndex);
+            mFinished = false;
+        }
+    }
+
+    int getAnimationIndex() {
+        return mAnimationIndex;
+    }
+
+    boolean isFinished() {
+        return mFinished;
+    }
+
+    /**
+     * @return time from the last sample until the next animation index is due
+     */
+    long getDelayToNextStepMs() {
+        long nextStepTimeMs = mStartTimeMs + getStepsDone() * mStepDurationMs;
+        return Math.max(0, nextStepTimeMs - mNowMs);
+    }
+
+    private long getStepsDone() {
+        long elapsedMs = mNowMs - mStartTimeMs;
+        if (elapsedMs < 0) {
+            return 0;
+        }
+        return elapsedMs / mStepDurationMs + 1;
+    }
+
+    /**
+     * @return steps to the end index, the last one may advance less than the stride
+     */
+    int getStepsCount() {
+        int distance = Math.abs(mToIndex - mFromIndex);
+        return (distance + mIndexStride - 1) / mIndexStride;
+    }
+
+    private long getEndTimeMs() {
+        return mStartTimeMs + Math.max(0, getStepsCount() - 1) * mStepDurationMs;
+    }
+}
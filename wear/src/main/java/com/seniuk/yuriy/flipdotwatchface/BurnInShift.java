@@ -0,0 +1,29 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Pixel offset of the ambient face for burn-in protection. The offset walks around a small
+ * circle, one position per minute, so no pixel stays lit for long.
+ */
+final class BurnInShift {
+
+    private static final int POSITIONS_COUNT = 8;
+
+    private final int[] mOffsetsX = new int[POSITIONS_COUNT];
+    private final int[] mOffsetsY = new int[POSITIONS_COUNT];
+
+    BurnInShift(int radiusPx) {
+        for (int i = 0; i < POSITIONS_COUNT; i++) {
+            double angle = 2 * Math.PI * i / POSITIONS_COUNT;
+            mOffsetsX[i] = (int) Math.round(Math.cos(angle) * radiusPx);
+            mOffsetsY[i] = (int) Math.round(Math.sin(angle) * radiusPx);
+        }
+    }
+
+    int getOffsetX(int minuteOfDay) {
+        return mOffsetsX[minuteOfDay % POSITIONS_COUNT];
+    }
+
+    int getOffsetY(int minuteOfDay) {
+        return mOffsetsY[minuteOfDay % POSITIONS_COUNT];
+    }
+}
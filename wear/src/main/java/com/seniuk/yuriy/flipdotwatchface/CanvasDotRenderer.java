@@ -0,0 +1,77 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Renderer drawing with {@link Canvas} calls, sprites and the background are bitmaps.
+ * Tinted sprites are colored by the flipdot paint.
+ */
+final class CanvasDotRenderer implements DotRenderer {
+
+    private Canvas mCanvas;
+    private Bitmap mBackgroundBitmap;
+    private FlipdotSprites mSprites;
+    private Paint mFlipdotPaint;
+
+    private final Paint mAmbientFlipdotPaint;
+    private final Paint mAmbientFlipdotCutPaint;
+    private final Rect mBackgroundRect = new Rect();
+    private final Rect mFlipdotRect = new Rect();
+    private final Rect mCellRect = new Rect();
+
+    private float mRadius;
+    private float mCutRadius;
+    private float mCutDeltaPos;
+    private boolean mBurnInProtection;
+
+    CanvasDotRenderer(Paint ambientFlipdotPaint, Paint ambientFlipdotCutPaint) {
+        mAmbientFlipdotPaint = ambientFlipdotPaint;
+        mAmbientFlipdotCutPaint = ambientFlipdotCutPaint;
+    }
+
+    void setCanvas(Canvas canvas) {
+        mCanvas = canvas;
+    }
+
+    void setSprites(FlipdotSprites sprites, Paint flipdotPaint) {
+        mBackgroundBitmap = sprites.getBackground();
+        mSprites = sprites;
+        mFlipdotPaint = flipdotPaint;
+    }
+
+    @Override
+    public void setAmbientFlipdot(float radius, float cutRadius, float cutDeltaPos,
+                                  boolean burnInProtection, float burnInStrokeWidth) {
+        //stroke width is taken from the ambient paint
+        mRadius = radius;
+        mCutRadius = cutRadius;
+        mCutDeltaPos = cutDeltaPos;
+        mBurnInProtection = burnInProtection;
+    }
+
+    @Override
+    public void drawBackground(int left, int top, int right, int bottom) {
+        mBackgroundRect.set(left, top, right, bottom);
+        mCanvas.drawBitmap(mBackgroundBitmap, mBackgroundRect, mBackgroundRect, null);
+    }
+
+    @Override
+    public void drawFlipdot(int animationIndex, int left, int top) {
+        mSprites.getFlipdotRect(animationIndex, mFlipdotRect);
+        mCellRect.set(left, top, left + mFlipdotRect.width(), top + mFlipdotRect.height());
+        mCanvas.drawBitmap(mSprites.getFlipdotBitmap(animationIndex), mFlipdotRect, mCellRect, mFlipdotPaint);
+    }
+
+    @Override
+    public void drawAmbientFlipdot(int centerX, int centerY) {
+        if (mBurnInProtection) {
+            mCanvas.drawCircle(centerX, centerY, mRadius / 2f, mAmbientFlipdotPaint);
+        } else {
+            mCanvas.drawCircle(centerX, centerY, mRadius, mAmbientFlipdotPaint);
+            mCanvas.drawCircle(centerX - mCutDeltaPos, centerY - mCutDeltaPos, mCutRadius, mAmbientFlipdotCutPaint);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Dot cells of a grid that can't be seen: outside the round screen or behind the chin of a flat
+ * tire screen. Hidden cells are not drawn, so cells coming back into view are reported as
+ * revealed to be redrawn.
+ * <p>
+ * Peek cards are translucent and the dots show through them, cells under a card are not hidden.
+ * <p>
+ * A grid that sits whole inside the shown part of the screen, like the 7x11 digit grid on any
+ * screen, skips the pass over its cells and reports no hidden cells, see {@link #hasHiddenCells()}.
+ * The cell pass is left to grids that reach the edge, like the dot matrix.
+ */
+final class CellOcclusion {
+
+    //max columns, a row of cells is kept in a single long
+    static final int MAX_COLUMNS = 64;
+
+    private final int mColumns;
+    private final int mRows;
+    private final long mAllColumns;
+
+    private final long[] mHidden;
+    //cells hidden before the last update and visible after it
+    private final long[] mRevealed;
+    private boolean mHasHiddenCells;
+
+    private int mLeft;
+    private int mTop;
+    private int mCellSize;
+
+    private int mWidth;
+    private int mHeight;
+    private boolean mRound;
+    private int mChinHeight;
+
+    CellOcclusion(int columns, int rows) {
+        if (columns > MAX_COLUMNS) {
+            throw new IllegalArgumentException("columns " + columns + " > " + MAX_COLUMNS);
+        }
+        mColumns = columns;
+        mRows = rows;
+        mAllColumns = columns == MAX_COLUMNS ? -1L : (1L << columns) - 1;
+        mHidden = new long[rows];
+        mRevealed = new long[rows];
+    }
+
+    /**
+     * Places the grid on the screen, the top left cell at the given pixel position.
+     */
+    void setGrid(int left, int top, int cellSize) {
+        mLeft = left;
+        mTop = top;
+        mCellSize = cellSize;
+    }
+
+    void setScreen(int width, int height, boolean round, int chinHeight) {
+        mWidth = width;
+        mHeight = height;
+        mRound = round;
+        mChinHeight = chinHeight;
+    }
+
+    /**
+     * Recomputes the hidden cells after the grid or the screen changed.
+     *
+     * @return true if any cell was revealed
+     */
+    boolean update() {
+        boolean revealed = false;
+        if (isRectShown(mLeft, mTop, mLeft + mColumns * mCellSize, mTop + mRows * mCellSize)) {
+            for (int row = 0; row < mRows; row++) {
+                mRevealed[row] = mHidden[row];
+                mHidden[row] = 0;
+                revealed |= mRevealed[row] != 0;
+            }
+            mHasHiddenCells = false;
+            return revealed;
+        }
+
+        boolean hasHidden = false;
+        for (int row = 0; row < mRows; row++) {
+            long hidden = 0;
+            int top = mTop + row * mCellSize;
+            for (int column = 0; column < mColumns; column++) {
+                int left = mLeft + column * mCellSize;
+                if (isRectHidden(left, top, left + mCellSize, top + mCellSize)) {
+                    hidden |= 1L << column;
+                }
+            }
+            mRevealed[row] = mHidden[row] & ~hidden;
+            mHidden[row] = hidden;
+            revealed |= mRevealed[row] != 0;
+            hasHidden |= hidden != 0;
+        }
+        mHasHiddenCells = hasHidden;
+        return revealed;
+    }
+
+    /**
+     * @return false when every cell is shown, the grid needs no checks per cell then
+     */
+    boolean hasHiddenCells() {
+        return mHasHiddenCells;
+    }
+
+    boolean isHidden(int column, int row) {
+        return (mHidden[row] & (1L << column)) != 0;
+    }
+
+    boolean isRevealed(int column, int row) {
+        return (mRevealed[row] & (1L << column)) != 0;
+    }
+
+    boolean isRowHidden(int row) {
+        return mHidden[row] == mAllColumns;
+    }
+
+    boolean isRowRevealed(int row) {
+        return mRevealed[row] != 0;
+    }
+
+    boolean isAreaHidden(int column, int row, int width, int height) {
+        long columns = (width == MAX_COLUMNS ? -1L : (1L << width) - 1) << column;
+        for (int y = row; y < row + height; y++) {
+            if ((mHidden[y] & columns) != columns) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return first visible column of a row that is not hidden entirely
+     */
+    int getFirstVisibleColumn(int row) {
+        return Long.numberOfTrailingZeros(~mHidden[row] & mAllColumns);
+    }
+
+    /**
+     * @return last visible column of a row that is not hidden entirely
+     */
+    int getLastVisibleColumn(int row) {
+        return 63 - Long.numberOfLeadingZeros(~mHidden[row] & mAllColumns);
+    }
+
+    /**
+     * A rect is hidden when no part of it is on the surface above the chin and inside the circle.
+     */
+    boolean isRectHidden(int left, int top, int right, int bottom) {
+        //part of the surface that is shown at all
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, mWidth);
+        bottom = Math.min(bottom, mHeight - mChinHeight);
+        if (left >= right || top >= bottom) {
+            return true;
+        }
+
+        if (mRound) {
+            //nearest point of the rect is outside the circle
+            float radius = mWidth / 2f;
+            float centerY = mHeight / 2f;
+            float dx = Math.max(Math.max(left - radius, radius - right), 0);
+            float dy = Math.max(Math.max(top - centerY, centerY - bottom), 0);
+            return dx * dx + dy * dy >= radius * radius;
+        }
+        return false;
+    }
+
+    /**
+     * A rect is shown whole when it is on the surface above the chin and its farthest corner is
+     * inside the circle.
+     */
+    boolean isRectShown(int left, int top, int right, int bottom) {
+        if (left < 0 || top < 0 || right > mWidth || bottom > mHeight - mChinHeight) {
+            return false;
+        }
+
+        if (mRound) {
+            float radius = mWidth / 2f;
+            float centerY = mHeight / 2f;
+            float dx = Math.max(radius - left, right - radius);
+            float dy = Math.max(centerY - top, bottom - centerY);
+            return dx * dx + dy * dy <= radius * radius;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,134 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the sprite drawn in every dot cell of the display next to the sprite planned for the
+ * next frame, so that only the cells whose content changes have to be redrawn.
+ */
+final class DirtyCellTracker {
+
+    static final int EMPTY = -1;
+
+    //never planned, forces the cell to be redrawn
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final int mColumns;
+    private final int mRows;
+
+    private final int[] mDisplayed;
+    private final int[] mPlanned;
+    private final int[] mDirtyCells;
+
+    DirtyCellTracker(int columns, int rows) {
+        mColumns = columns;
+        mRows = rows;
+
+        mDisplayed = new int[columns * rows];
+        mPlanned = new int[columns * rows];
+        mDirtyCells = new int[columns * rows];
+
+        invalidateAll();
+        beginFrame();
+    }
+
+    int getColumns() {
+        return mColumns;
+    }
+
+    int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Starts planning a new frame with all cells empty.
+     */
+    void beginFrame() {
+        Arrays.fill(mPlanned, EMPTY);
+    }
+
+    void setCell(int column, int row, int sprite) {
+        if (column < 0 || column >= mColumns || row < 0 || row >= mRows) {
+            return;
+        }
+        mPlanned[row * mColumns + column] = sprite;
+    }
+
+    /**
+     * Compares the planned frame with the displayed one.
+     *
+     * @return number of cells to be redrawn
+     */
+    int collectDirtyCells() {
+        int count = 0;
+        for (int i = 0; i < mPlanned.length; i++) {
+            if (mPlanned[i] != mDisplayed[i]) {
+                mDirtyCells[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    boolean hasDirtyCells() {
+        return collectDirtyCells() > 0;
+    }
+
+    int getDirtyCell(int index) {
+        return mDirtyCells[index];
+    }
+
+    int getPlannedSprite(int cell) {
+        return mPlanned[cell];
+    }
+
+    int getCellColumn(int cell) {
+        return cell % mColumns;
+    }
+
+    int getCellRow(int cell) {
+        return cell / mColumns;
+    }
+
+    boolean isAreaDirty(int column, int row, int width, int height) {
+        for (int y = row; y < row + height; y++) {
+            for (int x = column; x < column + width; x++) {
+                int cell = y * mColumns + x;
+                if (mPlanned[cell] != mDisplayed[cell]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the planned cells of an area as the ones on display, e.g. after the area was
+     * redrawn at once.
+     */
+    void commitArea(int column, int row, int width, int height) {
+        for (int y = row; y < row + height; y++) {
+            System.arraycopy(mPlanned, y * mColumns + column, mDisplayed, y * mColumns + column, width);
+        }
+    }
+
+    /**
+     * Marks the planned frame as the one on display.
+     */
+    void commit() {
+        System.arraycopy(mPlanned, 0, mDisplayed, 0, mPlanned.length);
+    }
+
+    /**
+     * Forgets what is on display in a cell, e.g. after it was covered and not drawn.
+     */
+    void invalidateCell(int column, int row) {
+        mDisplayed[row * mColumns + column] = UNKNOWN;
+    }
+
+    /**
+     * Forgets what is on display, e.g. after the frame buffer was recreated.
+     */
+    void invalidateAll() {
+        Arrays.fill(mDisplayed, UNKNOWN);
+    }
+}
@@ -0,0 +1,154 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Redraws the planned dots of an interactive frame into the frame kept between draws: the dirty
+ * digits, whole from the symbol atlas or cell by cell, and the dirty rows of the dot matrix. The
+ * blits are left to the renderers, so the engine, the render thread and the day simulation draw
+ * the same cells.
+ */
+final class DotFrameDrawer {
+
+    //first sprite, the dot turned off
+    private static final int OFF_INDEX = 0;
+
+    /**
+     * Draws a whole symbol at an animation stage, a single blit from the symbol atlas.
+     */
+    interface SymbolRenderer {
+        void drawSymbol(int symbol, int animationIndex, int left, int top, int right, int bottom);
+    }
+
+    /**
+     * Draws the dot matrix, a blit per run of dots at the same stage.
+     */
+    interface RunRenderer {
+        /**
+         * Clears the rectangle to the panel color.
+         */
+        void drawPanel(int left, int top, int right, int bottom);
+
+        void drawRun(int animationIndex, int left, int top, int count);
+    }
+
+    private final int[] mDigitOffsetsX;
+    private final int[] mDigitOffsetsY;
+    private final int mGridLeft;
+    private final int mGridTop;
+
+    private float mCenterX;
+    private float mCenterY;
+    private int mBlockSize;
+    private float mXYOffset;
+
+    private final int[] mRunStarts = new int[DotMatrix.MAX_SIZE];
+    private final int[] mRunSprites = new int[DotMatrix.MAX_SIZE];
+
+    /**
+     * @param digitOffsetsX left dot of every digit, relative to the screen center
+     * @param digitOffsetsY top dot of every digit, relative to the screen center
+     */
+    DotFrameDrawer(int[] digitOffsetsX, int[] digitOffsetsY, int gridLeft, int gridTop) {
+        mDigitOffsetsX = digitOffsetsX;
+        mDigitOffsetsY = digitOffsetsY;
+        mGridLeft = gridLeft;
+        mGridTop = gridTop;
+    }
+
+    /**
+     * Sets where the dots are on the screen, in pixels.
+     */
+    void setGeometry(float centerX, float centerY, int blockSize, float xyOffset) {
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mBlockSize = blockSize;
+        mXYOffset = xyOffset;
+    }
+
+    /**
+     * Redraws the dirty cells planned for the digits and commits them. Digits at a single stage
+     * are drawn whole with the symbols, the other cells dot by dot.
+     *
+     * @param occlusion cells out of view, null when every cell is in view
+     * @param symbols   null until the symbol atlas is built
+     */
+    void drawDirtyDigits(DirtyCellTracker cells, FramePlanner planner, CellOcclusion occlusion,
+                         SymbolRenderer symbols, DotRenderer renderer) {
+        if (symbols != null) {
+            for (int i = 0; i < mDigitOffsetsX.length; i++) {
+                int column = mDigitOffsetsX[i] - mGridLeft;
+                int row = mDigitOffsetsY[i] - mGridTop;
+                int animationIndex = planner.getPlannedAnimationIndex(i);
+                if (animationIndex == FramePlanner.MIXED_ANIMATION_INDEX
+                        || !cells.isAreaDirty(column, row, GlyphFont3x5.WIDTH, GlyphFont3x5.HEIGHT)) {
+                    continue;
+                }
+                if (occlusion != null && occlusion.isAreaHidden(column, row, GlyphFont3x5.WIDTH, GlyphFont3x5.HEIGHT)) {
+                    cells.commitArea(column, row, GlyphFont3x5.WIDTH, GlyphFont3x5.HEIGHT);
+                    continue;
+                }
+
+                int xPos = getPixel(mCenterX, mDigitOffsetsX[i]);
+                int yPos = getPixel(mCenterY, mDigitOffsetsY[i]);
+                int right = xPos + GlyphFont3x5.WIDTH * mBlockSize;
+                int bottom = yPos + GlyphFont3x5.HEIGHT * mBlockSize;
+                renderer.drawBackground(xPos, yPos, right, bottom);
+                if (animationIndex != OFF_INDEX) {
+                    symbols.drawSymbol(planner.getPlannedSymbol(i), animationIndex, xPos, yPos, right, bottom);
+                }
+                cells.commitArea(column, row, GlyphFont3x5.WIDTH, GlyphFont3x5.HEIGHT);
+            }
+        }
+
+        int dirtyCount = cells.collectDirtyCells();
+        for (int i = 0; i < dirtyCount; i++) {
+            int cell = cells.getDirtyCell(i);
+            int column = cells.getCellColumn(cell);
+            int row = cells.getCellRow(cell);
+            //committed as drawn, the cell is redrawn when revealed
+            if (occlusion != null && occlusion.isHidden(column, row)) {
+                continue;
+            }
+            int xPos = getPixel(mCenterX, column + mGridLeft);
+            int yPos = getPixel(mCenterY, row + mGridTop);
+
+            //restore background patch under the cell
+            renderer.drawBackground(xPos, yPos, xPos + mBlockSize, yPos + mBlockSize);
+
+            int sprite = cells.getPlannedSprite(cell);
+            if (sprite != DirtyCellTracker.EMPTY) {
+                renderer.drawFlipdot(sprite, xPos, yPos);
+            }
+        }
+        cells.commit();
+    }
+
+    /**
+     * Redraws every dirty row of the matrix cut to its visible span and commits the rows.
+     */
+    void drawDirtyRows(DotMatrix matrix, CellOcclusion occlusion, int left, int top, int dotSize,
+                       RunRenderer runs) {
+        for (int row = 0; row < matrix.getRows(); row++) {
+            if (!matrix.isRowDirty(row) || occlusion.isRowHidden(row)) {
+                continue;
+            }
+            int first = occlusion.getFirstVisibleColumn(row);
+            int last = occlusion.getLastVisibleColumn(row) + 1;
+            int rowTop = top + row * dotSize;
+            runs.drawPanel(left + first * dotSize, rowTop, left + last * dotSize, rowTop + dotSize);
+
+            int runsCount = matrix.collectRowRuns(row, mRunStarts, mRunSprites);
+            for (int i = 0; i < runsCount; i++) {
+                int start = Math.max(mRunStarts[i], first);
+                int end = Math.min(i + 1 < runsCount ? mRunStarts[i + 1] : matrix.getColumns(), last);
+                if (start < end) {
+                    runs.drawRun(mRunSprites[i], left + start * dotSize, rowTop, end - start);
+                }
+            }
+        }
+        matrix.commitRows();
+    }
+
+    private int getPixel(float center, int dotOffset) {
+        return (int) (center + dotOffset * mBlockSize - mXYOffset);
+    }
+}
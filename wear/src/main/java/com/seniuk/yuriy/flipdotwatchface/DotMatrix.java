@@ -0,0 +1,185 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Dot matrix display of up to 64 columns and 64 rows. The dots on display and the dots of the
+ * next content are kept as one bit mask per row, a transition flips only the dots that differ.
+ * Rows are tracked for changes, so that only rows with flipping dots are redrawn, and a row is
+ * read as runs of dots sharing a sprite, so that it is drawn with a blit per run.
+ */
+final class DotMatrix {
+
+    static final int MAX_SIZE = 64;
+
+    private static final int OFF_INDEX = 0;
+
+    private final int mColumns;
+    private final int mRows;
+    private final int mOnIndex;
+
+    //lit dots on display, of the next content and flipping in the current transition
+    private final long[] mDisplayed;
+    private final long[] mTarget;
+    private final long[] mChanged;
+
+    private long mDirtyRows;
+    private int mAnimationIndex = OFF_INDEX;
+
+    DotMatrix(int columns, int rows, int onIndex) {
+        if (columns > MAX_SIZE || rows > MAX_SIZE) {
+            throw new IllegalArgumentException("dot matrix is limited to " + MAX_SIZE + " dots a side");
+        }
+        mColumns = columns;
+        mRows = rows;
+        mOnIndex = onIndex;
+
+        mDisplayed = new long[rows];
+        mTarget = new long[rows];
+        mChanged = new long[rows];
+
+        invalidateAll();
+    }
+
+    int getColumns() {
+        return mColumns;
+    }
+
+    int getRows() {
+        return mRows;
+    }
+
+    void clearContent() {
+        for (int row = 0; row < mRows; row++) {
+            mTarget[row] = 0;
+        }
+    }
+
+    /**
+     * Lights a dot of the next content, dots out of the matrix are ignored.
+     */
+    void setDot(int column, int row) {
+        if (column < 0 || column >= mColumns || row < 0 || row >= mRows) {
+            return;
+        }
+        mTarget[row] |= 1L << column;
+    }
+
+    /**
+     * Lights the dots of a glyph mask, dot (x, y) is bit (y * glyphColumns + x). Parts of the
+     * glyph out of the matrix are clipped.
+     */
+    void drawGlyph(int glyphMask, int glyphColumns, int left, int top) {
+        for (int dots = glyphMask; dots != 0; dots &= dots - 1) {
+            int bit = Integer.numberOfTrailingZeros(dots);
+            setDot(left + bit % glyphColumns, top + bit / glyphColumns);
+        }
+    }
+
+    /**
+     * Starts flipping the dots that differ between the display and the next content, dots of
+     * an unfinished transition jump to their previous state.
+     *
+     * @return false if nothing changes
+     */
+    boolean beginTransition() {
+        boolean hasChanges = false;
+        for (int row = 0; row < mRows; row++) {
+            long changed = mDisplayed[row] ^ mTarget[row];
+            if (changed != 0 || mChanged[row] != 0) {
+                mDirtyRows |= 1L << row;
+            }
+            mChanged[row] = changed;
+            hasChanges |= changed != 0;
+        }
+        mAnimationIndex = OFF_INDEX;
+        return hasChanges;
+    }
+
+    /**
+     * Moves flipping dots to the animation stage, rows with flipping dots get dirty.
+     */
+    void setAnimationIndex(int animationIndex) {
+        if (animationIndex == mAnimationIndex) {
+            return;
+        }
+        mAnimationIndex = animationIndex;
+        for (int row = 0; row < mRows; row++) {
+            if (mChanged[row] != 0) {
+                mDirtyRows |= 1L << row;
+            }
+        }
+    }
+
+    /**
+     * Takes the next content as displayed. The dots keep their sprites, the last stage of a
+     * transition looks the same as the finished one.
+     */
+    void finishTransition() {
+        for (int row = 0; row < mRows; row++) {
+            mDisplayed[row] = mTarget[row];
+            mChanged[row] = 0;
+        }
+        mAnimationIndex = OFF_INDEX;
+    }
+
+    /**
+     * Turns every dot off on display, the next transition flips on all lit dots of the content.
+     */
+    void clearDisplay() {
+        for (int row = 0; row < mRows; row++) {
+            mDisplayed[row] = 0;
+            mChanged[row] = 0;
+        }
+        mAnimationIndex = OFF_INDEX;
+        invalidateAll();
+    }
+
+    boolean hasDirtyRows() {
+        return mDirtyRows != 0;
+    }
+
+    boolean isRowDirty(int row) {
+        return (mDirtyRows & (1L << row)) != 0;
+    }
+
+    void commitRows() {
+        mDirtyRows = 0;
+    }
+
+    void invalidateRow(int row) {
+        mDirtyRows |= 1L << row;
+    }
+
+    void invalidateAll() {
+        mDirtyRows = mRows == MAX_SIZE ? -1L : (1L << mRows) - 1;
+    }
+
+    int getSprite(int column, int row) {
+        long bit = 1L << column;
+        if ((mChanged[row] & bit) != 0) {
+            return (mTarget[row] & bit) != 0 ? mAnimationIndex : mOnIndex - mAnimationIndex;
+        }
+        return (mDisplayed[row] & bit) != 0 ? mOnIndex : OFF_INDEX;
+    }
+
+    /**
+     * Splits a row into runs of dots drawn with the same sprite.
+     *
+     * @param runStarts  first column of every run
+     * @param runSprites sprite of every run
+     * @return number of runs, a run ends where the next one starts or at the last column
+     */
+    int collectRowRuns(int row, int[] runStarts, int[] runSprites) {
+        int count = 0;
+        int previousSprite = -1;
+        for (int column = 0; column < mColumns; column++) {
+            int sprite = getSprite(column, row);
+            if (sprite != previousSprite) {
+                runStarts[count] = column;
+                runSprites[count] = sprite;
+                count++;
+                previousSprite = sprite;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,131 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Lines of text laid out on a {@link DotMatrix} with the 3x5 dot font, centered as a block.
+ * A line wider than the matrix scrolls to the left by a column per scroll step and repeats
+ * after a gap, at step 0 it starts at the left edge. Lines are built in place with the append
+ * methods, without allocation.
+ */
+final class DotMatrixLayout {
+
+    private static final int GLYPH_SPACING = 1;
+    private static final int LINE_SPACING = 1;
+    private static final int SCROLL_GAP = 4;
+    private static final int GLYPH_ADVANCE = GlyphFont3x5.WIDTH + GLYPH_SPACING;
+
+    private final int mColumns;
+    private final char[][] mLines;
+    private final int[] mLengths;
+
+    DotMatrixLayout(int columns, int rows, int maxLineLength) {
+        mColumns = columns;
+        int linesCount = (rows + LINE_SPACING) / (GlyphFont3x5.HEIGHT + LINE_SPACING);
+        mLines = new char[linesCount][maxLineLength];
+        mLengths = new int[linesCount];
+    }
+
+    int getLinesCount() {
+        return mLines.length;
+    }
+
+    void clearLine(int line) {
+        mLengths[line] = 0;
+    }
+
+    /**
+     * Appends a character, the font has upper case letters only. Characters past the line
+     * capacity are dropped.
+     */
+    void append(int line, char c) {
+        if (mLengths[line] < mLines[line].length) {
+            mLines[line][mLengths[line]++] = Character.toUpperCase(c);
+        }
+    }
+
+    void append(int line, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(line, text.charAt(i));
+        }
+    }
+
+    /**
+     * Appends a non-negative number, padded with zeros to the given digits count.
+     */
+    void append(int line, int number, int minDigits) {
+        int digits = 1;
+        for (int value = number / 10; value > 0; value /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < minDigits; i++) {
+            append(line, '0');
+        }
+        int divisor = 1;
+        for (int i = 1; i < digits; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            append(line, (char) ('0' + number / divisor % 10));
+        }
+    }
+
+    /**
+     * @return scroll steps that bring the widest line back to its start, 0 if every line fits
+     * the matrix and none scrolls
+     */
+    int getScrollPassSteps() {
+        int steps = 0;
+        for (int line = 0; line < mLines.length; line++) {
+            int width = getLineWidth(line);
+            if (width > mColumns) {
+                steps = Math.max(steps, width + SCROLL_GAP);
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Sets the next content of the matrix to the lines at the given scroll step.
+     */
+    void render(DotMatrix matrix, int scrollStep) {
+        matrix.clearContent();
+
+        int linesCount = 0;
+        for (int line = 0; line < mLines.length; line++) {
+            if (mLengths[line] > 0) {
+                linesCount++;
+            }
+        }
+        int blockHeight = linesCount * (GlyphFont3x5.HEIGHT + LINE_SPACING) - LINE_SPACING;
+        int top = (matrix.getRows() - blockHeight) / 2;
+
+        for (int line = 0; line < mLines.length; line++) {
+            if (mLengths[line] == 0) {
+                continue;
+            }
+            int width = getLineWidth(line);
+            if (width <= mColumns) {
+                renderLine(matrix, line, (mColumns - width) / 2, top);
+            } else {
+                int period = width + SCROLL_GAP;
+                int left = -(scrollStep % period);
+                renderLine(matrix, line, left, top);
+                renderLine(matrix, line, left + period, top);
+            }
+            top += GlyphFont3x5.HEIGHT + LINE_SPACING;
+        }
+    }
+
+    private int getLineWidth(int line) {
+        return mLengths[line] == 0 ? 0 : mLengths[line] * GLYPH_ADVANCE - GLYPH_SPACING;
+    }
+
+    private void renderLine(DotMatrix matrix, int line, int left, int top) {
+        for (int i = 0; i < mLengths[line]; i++) {
+            int x = left + i * GLYPH_ADVANCE;
+            if (x >= mColumns || x + GlyphFont3x5.WIDTH <= 0) {
+                continue;
+            }
+            matrix.drawGlyph(GlyphFont3x5.glyph(mLines[line][i]), GlyphFont3x5.WIDTH, x, top);
+        }
+    }
+}
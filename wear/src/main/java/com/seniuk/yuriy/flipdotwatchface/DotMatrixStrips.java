@@ -0,0 +1,62 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Flipdot sprites scaled to the dot size of a {@link DotMatrix}, every animation stage repeated
+ * across a whole matrix row. A run of dots sharing a stage is drawn with a single blit, so a row
+ * costs one blit per run instead of one per dot.
+ * Strips of tinted sprites are an alpha mask, they are drawn with the tint paint.
+ */
+final class DotMatrixStrips {
+
+    private final Bitmap mBitmap;
+    private final int mDotSize;
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+
+    DotMatrixStrips(FlipdotSprites sprites, int columns, int dotSize) {
+        mDotSize = dotSize;
+
+        int stagesCount = sprites.getFlipdotsCount();
+        Bitmap.Config config = sprites.isTinted() ? Bitmap.Config.ALPHA_8 : Bitmap.Config.ARGB_8888;
+        mBitmap = Bitmap.createBitmap(columns * dotSize, stagesCount * dotSize, config);
+
+        Canvas canvas = new Canvas(mBitmap);
+        Paint paint = new Paint();
+        paint.setFilterBitmap(true);
+        Rect flipdotRect = new Rect();
+        Rect dotRect = new Rect();
+        for (int i = 0; i < stagesCount; i++) {
+            Bitmap flipdotBitmap = sprites.getFlipdotBitmap(i);
+            sprites.getFlipdotRect(i, flipdotRect);
+            for (int column = 0; column < columns; column++) {
+                dotRect.set(column * dotSize, i * dotSize, (column + 1) * dotSize, (i + 1) * dotSize);
+                canvas.drawBitmap(flipdotBitmap, flipdotRect, dotRect, paint);
+            }
+        }
+    }
+
+    int getDotSize() {
+        return mDotSize;
+    }
+
+    /**
+     * Draws a run of dots at the same animation stage.
+     *
+     * @param left  left edge of the first dot on the canvas
+     * @param count number of dots in the run
+     */
+    void drawRun(Canvas canvas, int animationIndex, int left, int top, int count, Paint paint) {
+        mSrcRect.set(0, animationIndex * mDotSize, count * mDotSize, (animationIndex + 1) * mDotSize);
+        mDstRect.set(left, top, left + count * mDotSize, top + mDotSize);
+        canvas.drawBitmap(mBitmap, mSrcRect, mDstRect, paint);
+    }
+
+    void recycle() {
+        mBitmap.recycle();
+    }
+}
@@ -0,0 +1,23 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Draws the parts of a flipdot face, coordinates are in pixels of the target.
+ */
+interface DotRenderer {
+
+    /**
+     * Sets the look of ambient dots: a filled circle with a cut out highlight, or a thin ring
+     * in burn-in protection mode.
+     */
+    void setAmbientFlipdot(float radius, float cutRadius, float cutDeltaPos,
+                           boolean burnInProtection, float burnInStrokeWidth);
+
+    /**
+     * Restores the background inside the rectangle.
+     */
+    void drawBackground(int left, int top, int right, int bottom);
+
+    void drawFlipdot(int animationIndex, int left, int top);
+
+    void drawAmbientFlipdot(int centerX, int centerY);
+}
@@ -0,0 +1,98 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+/**
+ * Receives the face config synced from the phone while the engine is alive. The synced config
+ * is read once on connect, later changes arrive as data events. Blobs that can't be read are
+ * ignored. Callbacks are made on the main thread.
+ * <p>
+ * There is no listener service, so a sync doesn't start the process of a face that isn't shown.
+ */
+final class FaceConfigListener implements DataApi.DataListener, GoogleApiClient.ConnectionCallbacks {
+
+    interface Callback {
+        void onFaceConfigChanged(FaceConfig config);
+    }
+
+    private final GoogleApiClient mClient;
+    private final Callback mCallback;
+
+    FaceConfigListener(Context context, Callback callback) {
+        mCallback = callback;
+        mClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .build();
+    }
+
+    void connect() {
+        mClient.connect();
+    }
+
+    void disconnect() {
+        if (mClient.isConnected()) {
+            Wearable.DataApi.removeListener(mClient, this);
+        }
+        mClient.disconnect();
+    }
+
+    @Override
+    public void onConnected(Bundle connectionHint) {
+        Wearable.DataApi.addListener(mClient, this);
+
+        //config synced before the face was created, from any node
+        Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).path(FaceConfig.DATA_PATH).build();
+        Wearable.DataApi.getDataItems(mClient, uri).setResultCallback(new ResultCallback<DataItemBuffer>() {
+            @Override
+            public void onResult(DataItemBuffer items) {
+                try {
+                    for (DataItem item : items) {
+                        onDataItem(item);
+                    }
+                } finally {
+                    items.release();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+    }
+
+    @Override
+    public void onDataChanged(DataEventBuffer events) {
+        try {
+            for (DataEvent event : events) {
+                if (event.getType() == DataEvent.TYPE_CHANGED) {
+                    onDataItem(event.getDataItem());
+                }
+            }
+        } finally {
+            events.release();
+        }
+    }
+
+    private void onDataItem(DataItem item) {
+        if (!FaceConfig.DATA_PATH.equals(item.getUri().getPath())) {
+            return;
+        }
+        FaceConfig config = FaceConfig.fromByteArray(item.getData());
+        if (config != null) {
+            mCallback.onFaceConfigChanged(config);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.os.Process;
+import android.view.SurfaceHolder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Draws the face on its own thread, so a slow callback on the main looper doesn't delay the
+ * flip animation. The thread owns the surface canvas and the frame bitmap of the digits with
+ * its dirty cells. The engine posts a {@link Snapshot} of the face for every frame, snapshots
+ * coming faster than they are drawn are dropped except the newest one.
+ * <p>
+ * Faces without the digits sprites, ambient and the vector face, are recorded on the main
+ * thread and replayed here.
+ */
+final class FaceRenderThread extends Thread {
+
+    //a frame in progress is drawn by then, the main thread doesn't wait longer on destroy
+    private static final long QUIT_TIMEOUT_MS = 100;
+
+    /**
+     * What a frame shows, never changed once posted.
+     */
+    static final class Snapshot {
+        //recorded face, null for the digits
+        final Picture mPicture;
+
+        final FlipdotSprites mSprites;
+        //null until built
+        final SymbolAtlas mAtlas;
+        final int mFlipdotColor;
+        final int[] mDigitsOnDisplay;
+        final int[] mDigitsToDisplay;
+        final int mAnimationIndex;
+        final boolean mFullCycle;
+        final boolean mReverse;
+        //-1 when the seconds are not shown
+        final int mSeconds;
+        final float mCenterX;
+        final float mCenterY;
+        final float mXYOffset;
+
+        private Snapshot(Picture picture, FlipdotSprites sprites, SymbolAtlas atlas, int flipdotColor,
+                         int[] digitsOnDisplay, int[] digitsToDisplay, int animationIndex,
+                         boolean fullCycle, boolean reverse, int seconds,
+                         float centerX, float centerY, float xyOffset) {
+            mPicture = picture;
+            mSprites = sprites;
+            mAtlas = atlas;
+            mFlipdotColor = flipdotColor;
+            mDigitsOnDisplay = digitsOnDisplay;
+            mDigitsToDisplay = digitsToDisplay;
+            mAnimationIndex = animationIndex;
+            mFullCycle = fullCycle;
+            mReverse = reverse;
+            mSeconds = seconds;
+            mCenterX = centerX;
+            mCenterY = centerY;
+            mXYOffset = xyOffset;
+        }
+
+        static Snapshot ofPicture(Picture picture) {
+            return new Snapshot(picture, null, null, 0, null, null, 0, false, false, -1, 0, 0, 0);
+        }
+
+        /**
+         * Digits arrays are copied, the engine keeps changing its own.
+         */
+        static Snapshot ofDigits(FlipdotSprites sprites, SymbolAtlas atlas, int flipdotColor,
+                                 int[] digitsOnDisplay, int[] digitsToDisplay, int animationIndex,
+                                 boolean fullCycle, boolean reverse, int seconds,
+                                 float centerX, float centerY, float xyOffset) {
+            return new Snapshot(null, sprites, atlas, flipdotColor, digitsOnDisplay.clone(), digitsToDisplay.clone(),
+                    animationIndex, fullCycle, reverse, seconds, centerX, centerY, xyOffset);
+        }
+    }
+
+    private final SnapshotMailbox<Snapshot> mMailbox = new SnapshotMailbox<>();
+
+    private final Object mSurfaceLock = new Object();
+    //null while there is no surface, guarded by mSurfaceLock
+    private SurfaceHolder mSurfaceHolder;
+
+    //duration of the last frame, -1 once taken
+    private final AtomicLong mFrameTimeUs = new AtomicLong(-1);
+
+    //frame state, touched by this thread only
+    private final int mSecondsRow;
+    private final int mOnIndex;
+    private final DirtyCellTracker mCells;
+    private final FramePlanner mPlanner;
+    private final DotFrameDrawer mDrawer;
+
+    private FlipdotSprites mSprites;
+    private Bitmap mFrameBitmap;
+    private Canvas mFrameCanvas;
+    private int mFlipdotColor;
+    private final CanvasDotRenderer mRenderer = new CanvasDotRenderer(null, null);
+    private final Paint mTintPaint = new Paint();
+    //mTintPaint, null when the sprites are drawn as they are
+    private Paint mFlipdotPaint;
+    private final Rect mCellRect = new Rect();
+    private final Rect mAtlasRect = new Rect();
+    //atlas of the snapshot being drawn
+    private SymbolAtlas mAtlas;
+    private final DotFrameDrawer.SymbolRenderer mAtlasRenderer = new DotFrameDrawer.SymbolRenderer() {
+        @Override
+        public void drawSymbol(int symbol, int animationIndex, int left, int top, int right, int bottom) {
+            mAtlas.getSymbolRect(symbol, animationIndex, mAtlasRect);
+            mCellRect.set(left, top, right, bottom);
+            mFrameCanvas.drawBitmap(mAtlas.getBitmap(), mAtlasRect, mCellRect, mFlipdotPaint);
+        }
+    };
+
+    FaceRenderThread(int[] symbolMasks, int[] digitOffsetsX, int[] digitOffsetsY,
+                     int gridLeft, int gridTop, int gridColumns, int gridRows, int secondsRow, int onIndex) {
+        super("FlipdotRenderThread");
+        mSecondsRow = secondsRow;
+        mOnIndex = onIndex;
+        mCells = new DirtyCellTracker(gridColumns, gridRows);
+        mPlanner = new FramePlanner(symbolMasks, GlyphFont3x5.WIDTH, onIndex, digitOffsetsX, digitOffsetsY,
+                gridLeft, gridTop, mCells);
+        mDrawer = new DotFrameDrawer(digitOffsetsX, digitOffsetsY, gridLeft, gridTop);
+        mTintPaint.setFilterBitmap(true);
+    }
+
+    /**
+     * Sets the surface to draw on, null when it is destroyed. Returns once a frame in progress
+     * is posted, the old surface is not touched after that. The main thread blocks for the blit
+     * of that frame at most, cells are drawn outside the lock.
+     */
+    void setSurface(SurfaceHolder holder) {
+        synchronized (mSurfaceLock) {
+            mSurfaceHolder = holder;
+        }
+    }
+
+    /**
+     * Draws the snapshot with the next frame, called on the main thread.
+     */
+    void post(Snapshot snapshot) {
+        mMailbox.post(snapshot);
+    }
+
+    /**
+     * @return time to draw the last frame since the previous call, -1 if none was drawn
+     */
+    long takeFrameTimeUs() {
+        return mFrameTimeUs.getAndSet(-1);
+    }
+
+    /**
+     * Stops the thread and waits for the frame in progress, for {@link #QUIT_TIMEOUT_MS} at most.
+     */
+    void quit() {
+        interrupt();
+        try {
+            join(QUIT_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+
+        Snapshot snapshot;
+        while (!isInterrupted() && (snapshot = mMailbox.take()) != null) {
+            //time to issue the draw calls, like onDraw on the main looper
+            long startUs = FrameStats.nowUs();
+            //frame bitmap is this thread's own, the cells are drawn into it without the surface
+            if (snapshot.mPicture == null) {
+                drawDirtyCells(snapshot);
+            }
+
+            synchronized (mSurfaceLock) {
+                if (mSurfaceHolder == null) {
+                    continue;
+                }
+                Canvas canvas = mSurfaceHolder.lockCanvas();
+                if (canvas == null) {
+                    continue;
+                }
+                try {
+                    if (snapshot.mPicture != null) {
+                        canvas.drawPicture(snapshot.mPicture);
+                    } else {
+                        canvas.drawBitmap(mFrameBitmap, 0, 0, null);
+                    }
+                    mFrameTimeUs.set(FrameStats.nowUs() - startUs);
+                } finally {
+                    mSurfaceHolder.unlockCanvasAndPost(canvas);
+                }
+            }
+        }
+    }
+
+    /**
+     * Plans the digits of the snapshot and redraws the cells that changed since the last frame,
+     * whole digits from the atlas once it is built.
+     */
+    private void drawDirtyCells(Snapshot snapshot) {
+        if (snapshot.mSprites != mSprites || snapshot.mFlipdotColor != mFlipdotColor) {
+            if (snapshot.mSprites != mSprites) {
+                mSprites = snapshot.mSprites;
+                mFrameBitmap = Bitmap.createBitmap(mSprites.getWidth(), mSprites.getHeight(),
+                        Bitmap.Config.ARGB_8888);
+                mFrameCanvas = new Canvas(mFrameBitmap);
+                mFrameCanvas.drawBitmap(mSprites.getBackground(), 0, 0, null);
+                mRenderer.setCanvas(mFrameCanvas);
+            }
+            mFlipdotColor = snapshot.mFlipdotColor;
+            ColorFilter filter = mSprites.createFlipdotFilter(mFlipdotColor);
+            mTintPaint.setColorFilter(filter);
+            mFlipdotPaint = filter != null ? mTintPaint : null;
+            mRenderer.setSprites(mSprites, mFlipdotPaint);
+            mCells.invalidateAll();
+        }
+
+        if (snapshot.mFullCycle) {
+            mPlanner.planFullCycleFrame(snapshot.mDigitsOnDisplay, snapshot.mDigitsToDisplay,
+                    snapshot.mAnimationIndex, snapshot.mReverse);
+        } else {
+            mPlanner.planChangedDotsFrame(snapshot.mDigitsOnDisplay, snapshot.mDigitsToDisplay,
+                    snapshot.mAnimationIndex);
+        }
+        if (snapshot.mSeconds >= 0) {
+            SecondsRow.plan(mCells, mSecondsRow, snapshot.mSeconds, mOnIndex);
+        }
+
+        mAtlas = snapshot.mAtlas;
+        mDrawer.setGeometry(snapshot.mCenterX, snapshot.mCenterY, mSprites.getFlipdotWidth(), snapshot.mXYOffset);
+        mDrawer.drawDirtyDigits(mCells, mPlanner, null, mAtlas != null ? mAtlasRenderer : null, mRenderer);
+    }
+}
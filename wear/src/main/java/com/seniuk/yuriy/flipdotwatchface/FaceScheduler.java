@@ -0,0 +1,626 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * What the face shows and when it wakes up: the handler messages, the time tick, ambient and
+ * visibility changes and the flip transitions of the digits and the dot matrix. Android is
+ * reached through {@link Host} only, the engine runs the scheduler on its handler and the day
+ * simulation runs the same class on a virtual clock.
+ * <p>
+ * Frames are requested with {@link Host#invalidate()}, the host draws them from the planned
+ * cells, the dot matrix and the digits of the scheduler.
+ */
+final class FaceScheduler {
+
+    static final int MSG_UPDATE_TIME = 0;
+    static final int MSG_ON_INTERACTIVE_MSG = 1;
+    static final int MSG_MINUTE_BOUNDARY = 2;
+    static final int MSG_MATRIX_SCROLL = 3;
+    static final int MSG_SECOND_BOUNDARY = 4;
+    static final int[] MESSAGES = new int[]{
+            MSG_UPDATE_TIME, MSG_ON_INTERACTIVE_MSG, MSG_MINUTE_BOUNDARY, MSG_MATRIX_SCROLL, MSG_SECOND_BOUNDARY
+    };
+
+    static final long ONE_ANIMATION_STEP_RATE_MS = 50;
+    static final long REDUCED_ANIMATION_STEP_RATE_MS = 80;
+    static final int REDUCED_ANIMATION_INDEX_STRIDE = 2;
+
+    static final int MATRIX_COLUMNS = 24;
+    static final int MATRIX_LINE_LENGTH = 16;
+
+    private static final long START_INTERCTIVE_MODE_OFFSET_MS = 200;
+    private static final long MATRIX_SCROLL_STEP_MS = 400;
+    //the dot font has capital letters only, names are not localized
+    private static final String[] WEEKDAY_NAMES = new String[]{"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+    private static final String[] MONTH_NAMES = new String[]{"JAN", "FEB", "MAR", "APR", "MAY", "JUN",
+            "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+
+    private static final int OFF_INDEX = 0;
+
+    /**
+     * Android side of the scheduler, calls are made on the thread the scheduler runs on.
+     */
+    interface Host {
+        /**
+         * Requests a frame.
+         */
+        void invalidate();
+
+        /**
+         * Delivers the message to {@link #handleMessage(int)} after the delay.
+         */
+        void sendMessageDelayed(int what, long delayMs);
+
+        void removeMessages(int what);
+    }
+
+    interface Clock extends AnimationTimeline.Clock {
+        long currentTimeMillis();
+    }
+
+    static final class Direction {
+        static final int FLIPDOT_DIRECTION_FORWARD = 1;
+        static final int FLIPDOT_DIRECTION_REVERSE = -1;
+    }
+
+    private final Host mHost;
+    private final Clock mClock;
+    //null unless frame stats are recorded
+    private final FrameStats mFrameStats;
+    private final int mOnIndex;
+    private final int mSecondsRow;
+
+    private final AnimationTimeline mAnimationTimeline;
+    //pace of the animation for the battery and power save state
+    private final AnimationGovernor mAnimationGovernor;
+    private final WallClock mWallClock;
+    private final DirtyCellTracker mDirtyCells;
+    private final FramePlanner mFramePlanner;
+
+    private boolean mVisible;
+    private boolean mAmbient;
+    private boolean mInteractiveRedraw = true;
+    //digits face is drawn from the sprites, the vector face has no seconds
+    private boolean mSpritesLoaded;
+
+    private int mCurrentAnimationIndex = OFF_INDEX;
+    private int mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_FORWARD;
+    private int mTransitionMode = FaceConfig.DEFAULT_TRANSITION_MODE;
+    //seconds row on the digits face, updated on a wakeup per second
+    private boolean mShowSeconds;
+    private int mSeconds;
+
+    private int mHours;
+    private int mMinutes;
+    private final int[] mInteractiveDigitsOnDisplay = new int[]{-1, -1, -1, -1};
+    private final int[] mDigitsToDisplay = new int[TimeDigits.DIGITS_COUNT];
+
+    //matrix display, null unless set up by the host
+    private DotMatrix mDotMatrix;
+    private DotMatrixLayout mMatrixLayout;
+    private int mMatrixScrollStep;
+    //a scrolling line passes once when the matrix is shown, not for as long as it is
+    private int mMatrixScrollStepsLeft;
+    private int mBatteryLevel = -1;
+    private int mUnreadCount;
+
+    /**
+     * @param symbolMasks   dot masks of the symbols the digits are drawn with
+     * @param digitOffsetsX left dot of every digit, relative to the screen center
+     * @param digitOffsetsY top dot of every digit, relative to the screen center
+     */
+    FaceScheduler(Host host, final Clock clock, WallClock wallClock, int flipdotsCount, int[] symbolMasks,
+                  int[] digitOffsetsX, int[] digitOffsetsY, int gridLeft, int gridTop,
+                  int gridColumns, int gridRows, int secondsRow, FrameStats frameStats) {
+        mHost = host;
+        mClock = clock;
+        mWallClock = wallClock;
+        mOnIndex = flipdotsCount - 1;
+        mSecondsRow = secondsRow;
+        mFrameStats = frameStats;
+
+        mAnimationTimeline = new AnimationTimeline(clock, ONE_ANIMATION_STEP_RATE_MS);
+        mAnimationGovernor = new AnimationGovernor(ONE_ANIMATION_STEP_RATE_MS,
+                REDUCED_ANIMATION_STEP_RATE_MS, REDUCED_ANIMATION_INDEX_STRIDE, flipdotsCount);
+        mDirtyCells = new DirtyCellTracker(gridColumns, gridRows);
+        mFramePlanner = new FramePlanner(symbolMasks, GlyphFont3x5.WIDTH, mOnIndex,
+                digitOffsetsX, digitOffsetsY, gridLeft, gridTop, mDirtyCells);
+    }
+
+    void handleMessage(int what) {
+        switch (what) {
+            case MSG_ON_INTERACTIVE_MSG:
+                mInteractiveRedraw = true;
+                updateInteractiveTimer();
+                break;
+
+            case MSG_UPDATE_TIME:
+                if (stepInteractiveAnimation()) {
+                    mHost.invalidate();
+                }
+                if (shouldTimerBeRunning()) {
+                    long delayMs = mAnimationTimeline.getDelayToNextStepMs();
+                    mHost.sendMessageDelayed(MSG_UPDATE_TIME, delayMs);
+                }
+                break;
+
+            case MSG_MINUTE_BOUNDARY:
+                onTimeChanged();
+                break;
+
+            case MSG_SECOND_BOUNDARY:
+                onSecondChanged();
+                break;
+
+            case MSG_MATRIX_SCROLL:
+                mMatrixScrollStepsLeft--;
+                //shorter lines are put back to their start with the widest one
+                mMatrixScrollStep = mMatrixScrollStepsLeft > 0 ? mMatrixScrollStep + 1 : 0;
+                mMatrixLayout.render(mDotMatrix, mMatrixScrollStep);
+                startTransition();
+                break;
+        }
+    }
+
+    /**
+     * Removes every pending message, nothing is scheduled until the next event.
+     */
+    void stop() {
+        for (int what : MESSAGES) {
+            mHost.removeMessages(what);
+        }
+    }
+
+    void onVisibilityChanged(boolean visible) {
+        mVisible = visible;
+        //whether the timers should be running depends on whether we're visible
+        updateInteractiveTimer();
+        updateMinuteTimer();
+        updateMatrixScrollTimer();
+    }
+
+    void onAmbientModeChanged(boolean inAmbientMode) {
+        mAmbient = inAmbientMode;
+
+        //start animation after ambient mode from closed flipdots
+        if (!mAmbient) {
+            mCurrentAnimationIndex = OFF_INDEX;
+            mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_FORWARD;
+            mAnimationTimeline.reset(OFF_INDEX);
+
+            if (mDotMatrix != null) {
+                mMatrixScrollStep = 0;
+                updateMatrixContent();
+                startMatrixScrollPass();
+            }
+            mWallClock.update(mClock.currentTimeMillis());
+            mSeconds = mWallClock.getSeconds();
+
+            mHost.sendMessageDelayed(MSG_ON_INTERACTIVE_MSG, START_INTERCTIVE_MODE_OFFSET_MS);
+        } else {
+            for (int i = 0; i < TimeDigits.DIGITS_COUNT; i++) {
+                mInteractiveDigitsOnDisplay[i] = -1;
+            }
+            if (mDotMatrix != null) {
+                mDotMatrix.clearDisplay();
+            }
+        }
+
+        mHost.invalidate();
+        updateInteractiveTimer();
+        updateMinuteTimer();
+        updateMatrixScrollTimer();
+    }
+
+    /**
+     * Called on the time tick and whenever the wall clock may have changed: time zone, 12/24 hour
+     * format or a minute boundary.
+     */
+    void onTimeChanged() {
+        if (mDotMatrix != null) {
+            //date and battery change without the time
+            updateActualTime();
+            if (!mAmbient && updateMatrixContent()) {
+                startTransition();
+            }
+        } else if (updateActualTime()) {
+            if (mTransitionMode == FaceConfig.TransitionMode.CHANGED_DOTS && !mAmbient) {
+                //transition starts from the digits on display
+                mCurrentAnimationIndex = OFF_INDEX;
+                mAnimationTimeline.reset(OFF_INDEX);
+            }
+            mInteractiveRedraw = true;
+            updateInteractiveTimer();
+        }
+
+        //interactive frames are requested by the animation timer, only when cells are dirty
+        if (mAmbient) {
+            mHost.invalidate();
+        }
+        updateMinuteTimer();
+    }
+
+    void onUnreadCountChanged(int count) {
+        mUnreadCount = count;
+        if (mDotMatrix != null && !mAmbient && updateMatrixContent()) {
+            startTransition();
+        }
+    }
+
+    /**
+     * The card is drawn by the system over the interactive face, only the ambient face dims it.
+     */
+    void onPeekCardMoved() {
+        if (mAmbient) {
+            mHost.invalidate();
+        }
+    }
+
+    void setBatteryState(int levelPercent, boolean charging) {
+        mBatteryLevel = levelPercent;
+        mAnimationGovernor.setBatteryState(levelPercent, charging);
+    }
+
+    void setPowerSaveMode(boolean powerSaveMode) {
+        mAnimationGovernor.setPowerSaveMode(powerSaveMode);
+    }
+
+    /**
+     * Sets the full animation step, the reduced one keeps its proportion to it.
+     */
+    void setStepDurationMs(long stepMs) {
+        mAnimationGovernor.setStepDurationsMs(stepMs,
+                stepMs * REDUCED_ANIMATION_STEP_RATE_MS / ONE_ANIMATION_STEP_RATE_MS);
+    }
+
+    void setShowSeconds(boolean showSeconds) {
+        if (showSeconds == mShowSeconds) {
+            return;
+        }
+        mShowSeconds = showSeconds;
+        mWallClock.update(mClock.currentTimeMillis());
+        mSeconds = mWallClock.getSeconds();
+        //row is planned empty when hidden and cleared with the next frame
+        mHost.invalidate();
+        updateMinuteTimer();
+    }
+
+    void setTransitionMode(int transitionMode) {
+        if (transitionMode == mTransitionMode) {
+            return;
+        }
+        mTransitionMode = transitionMode;
+        //matrix flips its dots forward whatever the mode
+        if (mDotMatrix == null) {
+            //full cycle flips off the digits on display first
+            mCurrentFlipdotDirection = mTransitionMode == FaceConfig.TransitionMode.FULL_CYCLE
+                    && mCurrentAnimationIndex == mOnIndex
+                    ? Direction.FLIPDOT_DIRECTION_REVERSE : Direction.FLIPDOT_DIRECTION_FORWARD;
+        }
+    }
+
+    /**
+     * The seconds row needs the frame of the digits drawn from the sprites.
+     */
+    void setSpritesLoaded(boolean spritesLoaded) {
+        mSpritesLoaded = spritesLoaded;
+        updateMinuteTimer();
+    }
+
+    /**
+     * Shows the time, date, battery level and unread count on the matrix, or the digits again
+     * when null. A new matrix flips its content on.
+     */
+    void setDotMatrix(DotMatrix dotMatrix, DotMatrixLayout layout) {
+        mDotMatrix = dotMatrix;
+        mMatrixLayout = layout;
+        if (mDotMatrix == null) {
+            mHost.removeMessages(MSG_MATRIX_SCROLL);
+            return;
+        }
+        mWallClock.update(mClock.currentTimeMillis());
+        mMatrixScrollStep = 0;
+        if (updateMatrixContent()) {
+            startTransition();
+        }
+        if (!mAmbient) {
+            startMatrixScrollPass();
+        }
+    }
+
+    /**
+     * Takes every digit as off, the next transition flips on all lit dots.
+     */
+    void clearDisplay() {
+        for (int i = 0; i < TimeDigits.DIGITS_COUNT; i++) {
+            mInteractiveDigitsOnDisplay[i] = -1;
+        }
+        mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_FORWARD;
+    }
+
+    /**
+     * Flips the changed dots from the first animation stage.
+     */
+    void startTransition() {
+        mCurrentAnimationIndex = OFF_INDEX;
+        mAnimationTimeline.reset(OFF_INDEX);
+        mInteractiveRedraw = true;
+        updateInteractiveTimer();
+    }
+
+    private void updateInteractiveTimer() {
+        mHost.removeMessages(MSG_UPDATE_TIME);
+        if (shouldTimerBeRunning()) {
+            mHost.sendMessageDelayed(MSG_UPDATE_TIME, 0);
+        }
+    }
+
+    private boolean shouldTimerBeRunning() {
+        return mVisible && !mAmbient && mInteractiveRedraw;
+    }
+
+    /**
+     * Wakes up exactly at the next minute boundary in interactive mode, the time tick may
+     * come a few seconds late. Ambient mode relies on the time tick. While the seconds are
+     * shown the wakeup is at every second boundary and it takes the minute change too.
+     */
+    private void updateMinuteTimer() {
+        mHost.removeMessages(MSG_MINUTE_BOUNDARY);
+        mHost.removeMessages(MSG_SECOND_BOUNDARY);
+        if (!mVisible || mAmbient) {
+            return;
+        }
+        //sample may be from before the face was hidden
+        long nowMs = mClock.currentTimeMillis();
+        mWallClock.update(nowMs);
+        if (isSecondsShown()) {
+            mHost.sendMessageDelayed(MSG_SECOND_BOUNDARY, mWallClock.getNextSecondMs() - nowMs);
+        } else {
+            mHost.sendMessageDelayed(MSG_MINUTE_BOUNDARY, Math.max(0, mWallClock.getNextMinuteMs() - nowMs));
+        }
+    }
+
+    boolean isSecondsShown() {
+        return mShowSeconds && mSpritesLoaded && mDotMatrix == null;
+    }
+
+    /**
+     * Redraws the seconds row, a frame of the flip animation draws it when one is running.
+     */
+    private void onSecondChanged() {
+        mWallClock.update(mClock.currentTimeMillis());
+        mSeconds = mWallClock.getSeconds();
+        if (mWallClock.getDisplayHours() != mHours || mWallClock.getMinutes() != mMinutes) {
+            onTimeChanged();
+            return;
+        }
+        if (!mInteractiveRedraw) {
+            mHost.invalidate();
+        }
+        updateMinuteTimer();
+    }
+
+    /**
+     * Moves the scrolling lines of the matrix a dot once the current transition is over, until
+     * the pass is done.
+     */
+    private void updateMatrixScrollTimer() {
+        mHost.removeMessages(MSG_MATRIX_SCROLL);
+        if (mVisible && !mAmbient && mDotMatrix != null && !mInteractiveRedraw && mMatrixScrollStepsLeft > 0) {
+            mHost.sendMessageDelayed(MSG_MATRIX_SCROLL, MATRIX_SCROLL_STEP_MS);
+        }
+    }
+
+    /**
+     * Scrolls the lines wider than the matrix once, from their start, each time the face turns
+     * interactive. Lines stay at their start after that, so the matrix settles like the digits.
+     */
+    private void startMatrixScrollPass() {
+        mMatrixScrollStepsLeft = mMatrixLayout.getScrollPassSteps();
+    }
+
+    /**
+     * Lays out the time, date, battery level and unread count on the matrix.
+     *
+     * @return true if any dot changes
+     */
+    private boolean updateMatrixContent() {
+        DotMatrixLayout layout = mMatrixLayout;
+        for (int line = 0; line < layout.getLinesCount(); line++) {
+            layout.clearLine(line);
+        }
+
+        layout.append(0, mHours, mWallClock.is24Hour() ? 2 : 1);
+        layout.append(0, ':');
+        layout.append(0, mMinutes, 2);
+
+        if (layout.getLinesCount() > 1) {
+            layout.append(1, WEEKDAY_NAMES[mWallClock.getDayOfWeek()]);
+            layout.append(1, ' ');
+            layout.append(1, mWallClock.getDayOfMonth(), 1);
+            layout.append(1, ' ');
+            layout.append(1, MONTH_NAMES[mWallClock.getMonth() - 1]);
+        }
+        if (layout.getLinesCount() > 2 && mBatteryLevel >= 0) {
+            layout.append(2, mBatteryLevel, 1);
+            layout.append(2, '%');
+        }
+        if (layout.getLinesCount() > 3 && mUnreadCount > 0) {
+            layout.append(3, mUnreadCount, 1);
+            layout.append(3, " NEW");
+        }
+
+        layout.render(mDotMatrix, mMatrixScrollStep);
+        return mDotMatrix.beginTransition();
+    }
+
+    /**
+     * Plans the dots of the current animation stage: the dirty cells of the digits and the
+     * seconds row, or the dirty rows of the matrix.
+     */
+    void planInteractiveFrame() {
+        if (mDotMatrix != null) {
+            mDotMatrix.setAnimationIndex(mCurrentAnimationIndex);
+        } else {
+            if (mTransitionMode == FaceConfig.TransitionMode.CHANGED_DOTS) {
+                mFramePlanner.planChangedDotsFrame(mInteractiveDigitsOnDisplay, mDigitsToDisplay,
+                        mCurrentAnimationIndex);
+            } else {
+                mFramePlanner.planFullCycleFrame(mInteractiveDigitsOnDisplay, mDigitsToDisplay,
+                        mCurrentAnimationIndex, mCurrentFlipdotDirection == Direction.FLIPDOT_DIRECTION_REVERSE);
+            }
+            //seconds dots don't flip, they are set at once
+            if (mShowSeconds) {
+                SecondsRow.plan(mDirtyCells, mSecondsRow, mSeconds, mOnIndex);
+            }
+        }
+    }
+
+    /**
+     * Moves the flip animation to the stage due at the current time, stages missed by a late
+     * frame are skipped.
+     *
+     * @return true if the new stage changes any dot cell and has to be drawn
+     */
+    private boolean stepInteractiveAnimation() {
+        if (mInteractiveRedraw && mAnimationTimeline.isFinished()) {
+            int toIndex = mCurrentFlipdotDirection == Direction.FLIPDOT_DIRECTION_FORWARD
+                    ? mOnIndex : OFF_INDEX;
+            //pace is fixed for the whole transition
+            mAnimationTimeline.setPace(mAnimationGovernor.getStepDurationMs(), mAnimationGovernor.getIndexStride());
+            mAnimationTimeline.start(mCurrentAnimationIndex, toIndex);
+            if (mFrameStats != null) {
+                mFrameStats.beginTransition();
+            }
+        } else {
+            mAnimationTimeline.update();
+        }
+        mCurrentAnimationIndex = mAnimationTimeline.getAnimationIndex();
+
+        planInteractiveFrame();
+        boolean isDirty = mDotMatrix != null ? mDotMatrix.hasDirtyRows() : mDirtyCells.hasDirtyCells();
+
+        if (mAnimationTimeline.isFinished()) {
+            if (mDotMatrix != null) {
+                finishMatrixTransition();
+            } else if (mTransitionMode == FaceConfig.TransitionMode.CHANGED_DOTS) {
+                finishChangedDotsAnimation();
+            } else {
+                finishFullCycleAnimation();
+            }
+            if (mFrameStats != null && !mInteractiveRedraw) {
+                mFrameStats.endTransition();
+            }
+        }
+
+        return isDirty;
+    }
+
+    private void finishFullCycleAnimation() {
+        if (mCurrentAnimationIndex == mOnIndex) {
+            mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_REVERSE;
+            //copy display values, to be used on reverse animation
+            System.arraycopy(mDigitsToDisplay, 0, mInteractiveDigitsOnDisplay, 0, TimeDigits.DIGITS_COUNT);
+            //we're ON, turn off interactive animation
+            mInteractiveRedraw = false;
+        } else if (mCurrentAnimationIndex == OFF_INDEX) {
+            mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_FORWARD;
+            //flip on the new digits without losing time of a late frame
+            mAnimationTimeline.chain(OFF_INDEX, mOnIndex);
+        }
+    }
+
+    /**
+     * Changed dots transition runs forward only, from the digits on display to the new ones.
+     */
+    private void finishChangedDotsAnimation() {
+        if (mCurrentAnimationIndex == mOnIndex) {
+            System.arraycopy(mDigitsToDisplay, 0, mInteractiveDigitsOnDisplay, 0, TimeDigits.DIGITS_COUNT);
+            mInteractiveRedraw = false;
+        }
+    }
+
+    /**
+     * Matrix transitions flip the changed dots forward only, like the changed dots digits.
+     */
+    private void finishMatrixTransition() {
+        if (mCurrentAnimationIndex == mOnIndex) {
+            mDotMatrix.finishTransition();
+            mInteractiveRedraw = false;
+            updateMatrixScrollTimer();
+        }
+    }
+
+    private boolean updateActualTime() {
+        mWallClock.update(mClock.currentTimeMillis());
+        int hours = mWallClock.getDisplayHours();
+        int minutes = mWallClock.getMinutes();
+
+        //hours change alone when the 12/24 hour format or the time zone changes
+        boolean isChanged = mHours != hours || mMinutes != minutes;
+
+        mHours = hours;
+        mMinutes = minutes;
+
+        TimeDigits.fill(mHours, mMinutes, mDigitsToDisplay);
+
+        return isChanged;
+    }
+
+    boolean isAmbient() {
+        return mAmbient;
+    }
+
+    WallClock getWallClock() {
+        return mWallClock;
+    }
+
+    AnimationGovernor getAnimationGovernor() {
+        return mAnimationGovernor;
+    }
+
+    DirtyCellTracker getDirtyCells() {
+        return mDirtyCells;
+    }
+
+    FramePlanner getFramePlanner() {
+        return mFramePlanner;
+    }
+
+    DotMatrix getDotMatrix() {
+        return mDotMatrix;
+    }
+
+    int getCurrentAnimationIndex() {
+        return mCurrentAnimationIndex;
+    }
+
+    int getTransitionMode() {
+        return mTransitionMode;
+    }
+
+    boolean isReverse() {
+        return mCurrentFlipdotDirection == Direction.FLIPDOT_DIRECTION_REVERSE;
+    }
+
+    int getMinuteOfDay() {
+        return mHours * 60 + mMinutes;
+    }
+
+    /**
+     * @return -1 when the seconds row is not shown
+     */
+    int getSeconds() {
+        return mShowSeconds ? mSeconds : -1;
+    }
+
+    /**
+     * @return digits of the interactive face before the current transition, -1 for a digit off
+     */
+    int[] getDigitsOnDisplay() {
+        return mInteractiveDigitsOnDisplay;
+    }
+
+    int[] getDigitsToDisplay() {
+        return mDigitsToDisplay;
+    }
+}
@@ -1,86 +1,233 @@
 package com.seniuk.yuriy.flipdotwatchface;
 
+import android.app.ActivityManager;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
+import android.database.ContentObserver;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorFilter;
 import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
+import android.os.BatteryManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.provider.Settings;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateFormat;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
 import android.view.Gravity;
 import android.view.SurfaceHolder;
+import android.view.WindowInsets;
 
-import java.util.Calendar;
-import java.util.Date;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.TimeZone;
 
 public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
+
+    //sprites shared by the active face and the previews
+    //the render thread may still draw the atlas of a released set, it is not recycled then
+    private final SpriteCache mSpriteCache = new SpriteCache(!BuildConfig.RENDER_THREAD);
+
     @Override
     public Engine onCreateEngine() {
         /* provide your watch face implementation */
         return new FlipdotEngine();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mSpriteCache.trimMemory();
+    }
+
 
     /* implement service callback methods */
     private class FlipdotEngine extends CanvasWatchFaceService.Engine {
 
-        static final int MSG_UPDATE_TIME = 0;
-        static final int MSG_ON_INTERACTIVE_MSG = 1;
-
-        private final long START_INTERCTIVE_MODE_OFFSET_MS = 200;
-        private final long ONE_ANIMATION_STEP_RATE_MS = 50;
-
-        private final int FLIPDOT_COLOR = Color.GREEN;
-        private final int FLIPDOTS_COUNT = 8;
-        private final float BURNIN_FLIPDOT_PAINT_STROKE_WIDTH = 3f;
+        private final int FLIPDOTS_COUNT = BuildConfig.FLIPDOTS_COUNT;
+        private final int BURNIN_SHIFT_RADIUS_PX = 4;
+        private final int AMBIENT_LAYERS_CACHE_SIZE = 12;
+        private final float FRAME_STATS_TEXT_SIZE_PX = 14f;
+        private final long FRAME_STATS_TEXT_RATE_MS = 1000;
+        //dump argument clearing the frame stats once printed
+        private final String FRAME_STATS_RESET_ARG = "reset";
+        private final int MATRIX_PANEL_COLOR = Color.BLACK;
 
         final class FlipdotState {
             static final int OFF = 0;
-            static final int ON = 7;
+            static final int ON = BuildConfig.FLIPDOTS_COUNT - 1;
         }
 
         private Rect mPeekRect;
+        private boolean mRoundScreen;
+        private int mChinHeight;
         private int mFlipdotBlockSize;
         private float mFlipdotCircleRadius;
         private float mFlipdotCircleCutDeltaPos;
         private float mFlipdotCircleCutRadius;
         private float mFlipdotXYOffset;
 
-        final class Direction {
-            static final int FLIPDOT_DIRECTION_FORWARD = 1;
-            static final int FLIPDOT_DIRECTION_REVERSE = -1;
-        }
+        //one of the FaceConfig.DisplayMode values
+        private int mDisplayMode = FaceConfig.DEFAULT_DISPLAY_MODE;
+
+        //handler messages, timers and transitions of the face, see onCreate()
+        private FaceScheduler mScheduler;
+        //shared with the scheduler
+        private AnimationGovernor mAnimationGovernor;
+        private DirtyCellTracker mDirtyCells;
+        private FramePlanner mFramePlanner;
+        private boolean mRegisteredPowerReceiver = false;
+
+        private WallClock mWallClock;
+
+        //null unless enabled by BuildConfig.FRAME_STATS, see dump()
+        private final FrameStats mFrameStats = BuildConfig.FRAME_STATS
+                ? new FrameStats(FaceScheduler.ONE_ANIMATION_STEP_RATE_MS) : null;
+        private Paint mFrameStatsPaint;
+        //overlay text, rebuilt once per FRAME_STATS_TEXT_RATE_MS
+        private final String[] mFrameStatsLines = new String[3];
+        private long mFrameStatsLinesTimeMs = -1;
+        private long mSpritesRequestUs;
+        private boolean mRegisteredTimeZoneReceiver = false;
 
-        private int mCurrentAnimationIndex = FlipdotState.OFF;
-        private int mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_FORWARD;
+        final class SpriteMode {
+            //frames keep the colors of the artwork, another flipdot color is set by mFlipdotPaint
+            static final int FULL_COLOR = 0;
+            //frames are an alpha mask colored by mFlipdotColor, a quarter of the memory
+            static final int TINTED = 1;
+        }
 
-        private java.util.Calendar mCalendar;
-        private java.util.Date mDate;
-        private boolean mRegisteredTimeZoneReceiver = false;
+        private int mSpriteMode = SpriteMode.FULL_COLOR;
+        private int mFlipdotColor = FaceConfig.DEFAULT_FLIPDOT_COLOR;
 
-        private Bitmap[] mFlipdotBitmaps;
+        //null until loaded for the surface size, the vector face is drawn meanwhile
+        private FlipdotSprites mSprites;
         private Bitmap mBackgroundScaledBitmap;
+        //colors the sprites with mFlipdotColor, null when they are drawn as they are
+        private Paint mFlipdotPaint;
+        private Paint mFlipdotTintPaint;
+        private int mSpritesGeneration;
+        private int mSpritesWidth;
+        private int mSpritesHeight;
+        //last load failed, it is retried when the face becomes visible
+        private boolean mSpritesLoadFailed;
+
+        //interactive frame kept between draws, only dirty cells are redrawn into it, null while
+        //the face is hidden
+        private Bitmap mFrameBitmap;
+        private Canvas mFrameCanvas;
+        //dot cells out of view, they are not drawn
+        private CellOcclusion mDigitOcclusion;
+        private final Rect mCellRect = new Rect();
+
+        final class RenderBackend {
+            //draws dirty cells with Canvas calls into the frame bitmap
+            static final int CANVAS = 0;
+            //rasterizes dirty cells into a pixel buffer, changed span is copied to the frame bitmap
+            static final int SOFTWARE = 1;
+        }
+
+        private final int mRenderBackend = BuildConfig.SOFTWARE_RENDERER ? RenderBackend.SOFTWARE : RenderBackend.CANVAS;
+        private DotRenderer mFrameRenderer;
+        private CanvasDotRenderer mCanvasRenderer;
+        private SoftwareDotRenderer mSoftwareRenderer;
+        private CanvasDotRenderer mAmbientLayerRenderer;
+
+        final class RenderMode {
+            //frames are drawn by onDraw on the main looper
+            static final int MAIN_LOOPER = 0;
+            //frames are posted to the render thread as snapshots, digits display only
+            static final int RENDER_THREAD = 1;
+        }
+
+        private final int mRenderMode = BuildConfig.RENDER_THREAD ? RenderMode.RENDER_THREAD : RenderMode.MAIN_LOOPER;
+        //null unless in RENDER_THREAD mode
+        private FaceRenderThread mRenderThread;
+
+        //whole symbols at every animation stage, null until built for the current surface size
+        private SymbolAtlas mSymbolAtlas;
+        private int mSymbolAtlasGeneration;
+        private final Rect mAtlasRect = new Rect();
+
+        //draws whole digits from the symbol atlas into the frame
+        private final DotFrameDrawer.SymbolRenderer mAtlasRenderer = new DotFrameDrawer.SymbolRenderer() {
+            @Override
+            public void drawSymbol(int symbol, int animationIndex, int left, int top, int right, int bottom) {
+                mSymbolAtlas.getSymbolRect(symbol, animationIndex, mAtlasRect);
+                mCellRect.set(left, top, right, bottom);
+                mFrameCanvas.drawBitmap(mSymbolAtlas.getBitmap(), mAtlasRect, mCellRect, mFlipdotPaint);
+            }
+        };
 
-        private int[][][] mSymbolsMatrix;
+        //matrix display, null until the sprites are loaded in MATRIX mode
+        private DotMatrix mDotMatrix;
+        private DotMatrixStrips mMatrixStrips;
+        private int mMatrixLeft;
+        private int mMatrixTop;
+        private Paint mMatrixPanelPaint;
+        private CellOcclusion mMatrixOcclusion;
+
+        private final DotFrameDrawer.RunRenderer mMatrixRunRenderer = new DotFrameDrawer.RunRenderer() {
+            @Override
+            public void drawPanel(int left, int top, int right, int bottom) {
+                mFrameCanvas.drawRect(left, top, right, bottom, mMatrixPanelPaint);
+            }
+
+            @Override
+            public void drawRun(int animationIndex, int left, int top, int count) {
+                mMatrixStrips.drawRun(mFrameCanvas, animationIndex, left, top, count, mFlipdotPaint);
+            }
+        };
+
+        //dot masks of the symbols, indexed by Symbols
+        private int[] mSymbolMasks;
 
         private Paint mAmbientFlipdotPaint;
         private Paint mAmbientFlipdotCutPaint;
-        private Paint mAmbientPeekRect;
+        private Paint mAmbientPeekCardPaint;
+        private Paint mAmbientLayerPaint;
+        private Paint mVectorFacePaint;
+
+        //pre-rendered ambient symbols as alpha masks, keyed by symbol, dropped when the style changes
+        private final LruCache<Integer, Bitmap> mAmbientLayers = new LruCache<Integer, Bitmap>(AMBIENT_LAYERS_CACHE_SIZE) {
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, Bitmap oldValue, Bitmap newValue) {
+                //recorded ambient face may refer to the layer
+                mAmbientFacePicture = null;
+                //picture posted to the render thread may still draw it, left to the GC then
+                if (mRenderMode == RenderMode.MAIN_LOOPER) {
+                    oldValue.recycle();
+                }
+            }
+        };
+        //ambient digits recorded once a minute, replayed for the moves of a peek card
+        private Picture mAmbientFacePicture;
+        //time on display when the picture was recorded, see FaceScheduler.getMinuteOfDay()
+        private int mAmbientFaceMinute;
+        private BurnInShift mBurnInShift;
 
-        private boolean mAmbient;
         private boolean mLowBitAmbient;
         private boolean mBurnInProtection;
+        private float mBurnInStrokeWidth = FaceConfig.DEFAULT_BURN_IN_STROKE_WIDTH;
+
+        //fields synced from the phone so far, see applyFaceConfig()
+        private FaceConfig mFaceConfig = new FaceConfig();
+        private FaceConfigListener mFaceConfigListener;
 
         final class ScreenDigits {
             static final int DIGIT_0 = 0;
@@ -90,6 +237,26 @@ public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
             static final int DIGITS_COUNT = 4;
         }
 
+        //dot cells covered by the digits, in dots relative to the screen center
+        final class DotGrid {
+            static final int LEFT = -3;
+            static final int TOP = -5;
+            static final int COLUMNS = 7;
+            static final int ROWS = 11;
+            //row between the hours and the minutes, taken by the seconds
+            static final int SECONDS_ROW = 5;
+        }
+
+        private final int[] mDigitDotOffsetsX = new int[]{-3, 1, -3, 1};
+        private final int[] mDigitDotOffsetsY = new int[]{-5, -5, 1, 1};
+
+        private final DotFrameDrawer mFrameDrawer = new DotFrameDrawer(mDigitDotOffsetsX, mDigitDotOffsetsY,
+                DotGrid.LEFT, DotGrid.TOP);
+
+        //lit dots of a symbol, collected when an ambient layer is rendered
+        private final int[] mSymbolDotsX = new int[GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT];
+        private final int[] mSymbolDotsY = new int[GlyphFont3x5.WIDTH * GlyphFont3x5.HEIGHT];
+
         @SuppressWarnings("SpellCheckingInspection")
         final class Symbols {
             static final int SYMB_0 = 0;
@@ -105,60 +272,78 @@ public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
             static final int SYMB_EXCLAMATION = 10;
         }
 
-        private int mHours;
-        private int mMinutes;
-
-        private boolean mInteractiveRedraw = true;
+        //glyph characters of the symbols, in the order of Symbols
+        private final char[] mSymbolChars = "0123456789!".toCharArray();
 
         private float mCenterX;
         private float mCenterY;
         private float mWidth;
         private float mHeight;
 
-        private int[] mInteractiveDigitsOnDisplay = new int[]{-1, -1, -1, -1};
-        private int[] mDigitsToDisplay = new int[4];
-
         private final Handler mUpdateTimeHandler = new Handler() {
             @Override
             public void handleMessage(Message message) {
-                switch (message.what) {
-                    case MSG_ON_INTERACTIVE_MSG:
-                        mInteractiveRedraw = true;
-                        updateInteractiveTimer();
-                        break;
-
-                    case MSG_UPDATE_TIME:
-                        invalidate();
-                        if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
-                            long delayMs = ONE_ANIMATION_STEP_RATE_MS - (timeMs % ONE_ANIMATION_STEP_RATE_MS);
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                        }
-                        break;
+                if (message.what == FaceScheduler.MSG_UPDATE_TIME && mFrameStats != null) {
+                    mFrameStats.recordSchedulingLag((SystemClock.uptimeMillis() - message.getWhen()) * 1000);
                 }
+                mScheduler.handleMessage(message.what);
             }
         };
 
-        private void updateInteractiveTimer() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+        private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                //locale may change the default 12/24 hour format
+                mWallClock.setTimeZone(TimeZone.getDefault());
+                mWallClock.set24Hour(DateFormat.is24HourFormat(FlipdotCanvasWatchFaceService.this));
+                mScheduler.onTimeChanged();
             }
-        }
+        };
 
-        private boolean shouldTimerBeRunning() {
-            return isVisible() && !mAmbient && mInteractiveRedraw;
-        }
+        private final ContentObserver mTimeFormatObserver = new ContentObserver(mUpdateTimeHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mWallClock.set24Hour(DateFormat.is24HourFormat(FlipdotCanvasWatchFaceService.this));
+                mScheduler.onTimeChanged();
+            }
+        };
 
-        private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+        private final BroadcastReceiver mPowerReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                    updateBatteryState(intent);
+                } else {
+                    PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+                    mScheduler.setPowerSaveMode(powerManager.isPowerSaveMode());
+                }
             }
         };
 
+        private void updateBatteryState(Intent batteryIntent) {
+            int level = batteryIntent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = batteryIntent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level < 0 || scale <= 0) {
+                return;
+            }
+            boolean charging = batteryIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            mScheduler.setBatteryState(level * 100 / scale, charging);
+        }
+
         private void registerReceiver() {
+            if (!mRegisteredPowerReceiver) {
+                mRegisteredPowerReceiver = true;
+                IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+                filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+                //battery state is sticky, the current one is returned right away
+                Intent batteryIntent = FlipdotCanvasWatchFaceService.this.registerReceiver(mPowerReceiver, filter);
+                if (batteryIntent != null) {
+                    updateBatteryState(batteryIntent);
+                }
+                PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+                mScheduler.setPowerSaveMode(powerManager.isPowerSaveMode());
+            }
+
             if (mRegisteredTimeZoneReceiver) {
                 return;
             }
@@ -169,6 +354,11 @@ public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
         }
 
         private void unregisterReceiver() {
+            if (mRegisteredPowerReceiver) {
+                mRegisteredPowerReceiver = false;
+                FlipdotCanvasWatchFaceService.this.unregisterReceiver(mPowerReceiver);
+            }
+
             if (!mRegisteredTimeZoneReceiver) {
                 return;
             }
@@ -176,84 +366,11 @@ public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
             FlipdotCanvasWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
         }
 
-        private void createDigitsMatrix() {
-            mSymbolsMatrix = new int[11][][];
-            mSymbolsMatrix[Symbols.SYMB_0] = new int[][]{
-                    {1, 1, 1},
-                    {1, 0, 1},
-                    {1, 0, 1},
-                    {1, 0, 1},
-                    {1, 1, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_1] = new int[][]{
-                    {1, 1, 0},
-                    {0, 1, 0},
-                    {0, 1, 0},
-                    {0, 1, 0},
-                    {1, 1, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_2] = new int[][]{
-                    {1, 1, 1},
-                    {0, 0, 1},
-                    {1, 1, 1},
-                    {1, 0, 0},
-                    {1, 1, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_3] = new int[][]{
-                    {1, 1, 1},
-                    {0, 0, 1},
-                    {1, 1, 1},
-                    {0, 0, 1},
-                    {1, 1, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_4] = new int[][]{
-                    {1, 0, 1},
-                    {1, 0, 1},
-                    {1, 1, 1},
-                    {0, 0, 1},
-                    {0, 0, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_5] = new int[][]{
-                    {1, 1, 1},
-                    {1, 0, 0},
-                    {1, 1, 1},
-                    {0, 0, 1},
-                    {1, 1, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_6] = new int[][]{
-                    {1, 1, 1},
-                    {1, 0, 0},
-                    {1, 1, 1},
-                    {1, 0, 1},
-                    {1, 1, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_7] = new int[][]{
-                    {1, 1, 1},
-                    {0, 0, 1},
-                    {0, 0, 1},
-                    {0, 0, 1},
-                    {0, 0, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_8] = new int[][]{
-                    {1, 1, 1},
-                    {1, 0, 1},
-                    {1, 1, 1},
-                    {1, 0, 1},
-                    {1, 1, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_9] = new int[][]{
-                    {1, 1, 1},
-                    {1, 0, 1},
-                    {1, 1, 1},
-                    {0, 0, 1},
-                    {1, 1, 1}};
-
-            mSymbolsMatrix[Symbols.SYMB_EXCLAMATION] = new int[][]{
-                    {0, 1, 0},
-                    {0, 1, 0},
-                    {0, 1, 0},
-                    {0, 0, 0},
-                    {0, 1, 0}};
+        private void createSymbolMasks() {
+            mSymbolMasks = new int[mSymbolChars.length];
+            for (int i = 0; i < mSymbolChars.length; i++) {
+                mSymbolMasks[i] = GlyphFont3x5.glyph(mSymbolChars[i]);
+            }
         }
 
         private void updateConstants(int flipdotWidth) {
@@ -262,6 +379,294 @@ public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
             mFlipdotCircleCutRadius = (mFlipdotCircleRadius) / 3;
             mFlipdotCircleCutDeltaPos = (float) (Math.sin(Math.toRadians(45)) * mFlipdotCircleRadius);
             mFlipdotXYOffset = mFlipdotBlockSize / 2;
+            mFrameDrawer.setGeometry(mCenterX, mCenterY, mFlipdotBlockSize, mFlipdotXYOffset);
+
+            updateAmbientFlipdot();
+        }
+
+        private void updateAmbientFlipdot() {
+            mAmbientLayerRenderer.setAmbientFlipdot(mFlipdotCircleRadius, mFlipdotCircleCutRadius,
+                    mFlipdotCircleCutDeltaPos, mBurnInProtection, mBurnInStrokeWidth);
+            if (mSoftwareRenderer != null) {
+                mSoftwareRenderer.setAmbientFlipdot(mFlipdotCircleRadius, mFlipdotCircleCutRadius,
+                        mFlipdotCircleCutDeltaPos, mBurnInProtection, mBurnInStrokeWidth);
+            }
+        }
+
+        private void createFrameRenderer(int width, int height) {
+            mCanvasRenderer.setCanvas(mFrameCanvas);
+            mCanvasRenderer.setSprites(mSprites, mFlipdotPaint);
+            mSoftwareRenderer = null;
+
+            if (mRenderBackend == RenderBackend.SOFTWARE) {
+                int[] backgroundPixels = new int[width * height];
+                mBackgroundScaledBitmap.getPixels(backgroundPixels, 0, width, 0, 0, width, height);
+
+                int flipdotWidth = mSprites.getFlipdotWidth();
+                int flipdotHeight = mSprites.getFlipdotHeight();
+                int[][] flipdotPixels = new int[mSprites.getFlipdotsCount()][flipdotWidth * flipdotHeight];
+                for (int i = 0; i < flipdotPixels.length; i++) {
+                    mSprites.getFlipdotPixels(i, mFlipdotColor, flipdotPixels[i]);
+                }
+
+                mSoftwareRenderer = new SoftwareDotRenderer(width, height, backgroundPixels,
+                        flipdotPixels, flipdotWidth, flipdotHeight);
+                //frame bitmap already holds the background
+                mSoftwareRenderer.resetDirtyRect();
+                updateAmbientFlipdot();
+                mFrameRenderer = mSoftwareRenderer;
+            } else {
+                mFrameRenderer = mCanvasRenderer;
+            }
+        }
+
+        private void buildSymbolAtlas() {
+            mSymbolAtlas = null;
+
+            //atlas built for a previous surface size is dropped, the cache owns it
+            final int generation = ++mSymbolAtlasGeneration;
+            mSpriteCache.getSymbolAtlas(mSprites, mSymbolMasks, GlyphFont3x5.WIDTH, GlyphFont3x5.HEIGHT,
+                    mFlipdotBlockSize, mUpdateTimeHandler,
+                    new SymbolAtlas.Callback() {
+                        @Override
+                        public void onAtlasReady(SymbolAtlas atlas) {
+                            if (generation == mSymbolAtlasGeneration) {
+                                mSymbolAtlas = atlas;
+                            }
+                        }
+                    });
+        }
+
+        /**
+         * Sizes the matrix to whole dots across the screen width, as many rows as fit the height.
+         * The scheduler flips its content on.
+         */
+        private void createDotMatrix(int width, int height) {
+            int columns = FaceScheduler.MATRIX_COLUMNS;
+            int dotSize = width / columns;
+            int rows = Math.min(height / dotSize, DotMatrix.MAX_SIZE);
+            mMatrixLeft = (width - columns * dotSize) / 2;
+            mMatrixTop = (height - rows * dotSize) / 2;
+
+            if (mMatrixStrips != null) {
+                mMatrixStrips.recycle();
+            }
+
+            mDotMatrix = new DotMatrix(columns, rows, FlipdotState.ON);
+            mMatrixStrips = new DotMatrixStrips(mSprites, columns, dotSize);
+            mMatrixOcclusion = new CellOcclusion(columns, rows);
+
+            mScheduler.setDotMatrix(mDotMatrix,
+                    new DotMatrixLayout(columns, rows, FaceScheduler.MATRIX_LINE_LENGTH));
+        }
+
+        private void releaseDotMatrix() {
+            if (mMatrixStrips != null) {
+                mMatrixStrips.recycle();
+                mMatrixStrips = null;
+            }
+            mDotMatrix = null;
+            mMatrixOcclusion = null;
+            mScheduler.setDotMatrix(null, null);
+        }
+
+        private void loadSprites(int width, int height) {
+            mSpritesWidth = width;
+            mSpritesHeight = height;
+            mSpritesLoadFailed = false;
+            if (mFrameStats != null) {
+                mSpritesRequestUs = FrameStats.nowUs();
+            }
+
+            //sprites loaded for a previous surface size are released right away
+            final int generation = ++mSpritesGeneration;
+            mSpriteCache.acquire(getAssets(), width, height, mSpriteMode == SpriteMode.TINTED, mUpdateTimeHandler,
+                    new FlipdotSprites.Callback() {
+                        @Override
+                        public void onSpritesLoaded(FlipdotSprites sprites) {
+                            if (generation != mSpritesGeneration) {
+                                mSpriteCache.release(sprites);
+                                return;
+                            }
+                            applySprites(sprites);
+                            if (mFrameStats != null) {
+                                mFrameStats.recordSpritesLoad(mSpritesRequestUs, FrameStats.nowUs());
+                            }
+                        }
+
+                        @Override
+                        public void onSpritesFailed(IOException error) {
+                            //logged by the loader, the current face stays until the retry
+                            if (generation == mSpritesGeneration) {
+                                mSpritesLoadFailed = true;
+                            }
+                        }
+                    });
+        }
+
+        /**
+         * Replaces the vector face with the loaded sprites, everything drawn from them is set up
+         * before the next frame.
+         */
+        private void applySprites(FlipdotSprites sprites) {
+            int width = sprites.getWidth();
+            int height = sprites.getHeight();
+
+            if (mSprites != null && mSprites != sprites) {
+                mSpriteCache.release(mSprites);
+            }
+            mSprites = sprites;
+            mBackgroundScaledBitmap = sprites.getBackground();
+            updateFlipdotPaint();
+
+            updateConstants(sprites.getFlipdotWidth());
+
+            //frame of the previous sprites is built again by the next visible frame
+            releaseFrame();
+            mDirtyCells.invalidateAll();
+
+            if (mDisplayMode == FaceConfig.DisplayMode.MATRIX) {
+                createDotMatrix(width, height);
+            } else {
+                releaseDotMatrix();
+            }
+            updateOcclusion();
+            //seconds need the sprites and the digits
+            mScheduler.setSpritesLoaded(true);
+
+            buildSymbolAtlas();
+            invalidate();
+        }
+
+        /**
+         * Builds the frame bitmap of the main looper from the loaded sprites, every cell is drawn
+         * into it again. The render thread keeps its own frame.
+         */
+        private void createFrame() {
+            int width = mSprites.getWidth();
+            int height = mSprites.getHeight();
+            mFrameBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mFrameCanvas = new Canvas(mFrameBitmap);
+            mFrameCanvas.drawBitmap(mBackgroundScaledBitmap, 0, 0, null);
+            createFrameRenderer(width, height);
+
+            mDirtyCells.invalidateAll();
+            if (mDotMatrix != null) {
+                int dotSize = mMatrixStrips.getDotSize();
+                mFrameCanvas.drawRect(mMatrixLeft, mMatrixTop, mMatrixLeft + mDotMatrix.getColumns() * dotSize,
+                        mMatrixTop + mDotMatrix.getRows() * dotSize, mMatrixPanelPaint);
+                mDotMatrix.invalidateAll();
+            }
+        }
+
+        /**
+         * Frees the full screen frame and the ambient layers, a face hidden in the picker or
+         * behind an app keeps only the shared sprites.
+         */
+        private void releaseFrame() {
+            mFrameBitmap = null;
+            mFrameCanvas = null;
+            mCanvasRenderer.setCanvas(null);
+            mFrameRenderer = null;
+            mSoftwareRenderer = null;
+            mAmbientLayers.evictAll();
+        }
+
+        private void dropSprites() {
+            if (mSprites != null) {
+                mSpriteCache.release(mSprites);
+            }
+            mSprites = null;
+            mBackgroundScaledBitmap = null;
+            mFlipdotPaint = null;
+            releaseFrame();
+            releaseDotMatrix();
+            mScheduler.setSpritesLoaded(false);
+
+            mSymbolAtlas = null;
+            mSymbolAtlasGeneration++;
+        }
+
+        private void updateFlipdotPaint() {
+            ColorFilter filter = mSprites.createFlipdotFilter(mFlipdotColor);
+            mFlipdotTintPaint.setColorFilter(filter);
+            mFlipdotPaint = filter != null ? mFlipdotTintPaint : null;
+        }
+
+        /**
+         * Changes the color of the lit dots. The loaded sprites are recolored by the paint in
+         * either sprite mode, nothing is reloaded.
+         */
+        private void setFlipdotColor(int color) {
+            if (color == mFlipdotColor) {
+                return;
+            }
+            mFlipdotColor = color;
+            mVectorFacePaint.setColor(color);
+
+            if (mSprites != null) {
+                updateFlipdotPaint();
+            }
+            if (mFrameBitmap != null) {
+                //renderers keep the paint, the software one the frames as colored pixels
+                createFrameRenderer(mSprites.getWidth(), mSprites.getHeight());
+                mDirtyCells.invalidateAll();
+                if (mDotMatrix != null) {
+                    mDotMatrix.invalidateAll();
+                }
+            }
+            invalidate();
+        }
+
+        /**
+         * Applies the fields of the synced config that changed, the loaded sprites are kept.
+         */
+        private void applyFaceConfig(FaceConfig config) {
+            int changed = config.getChangedFields(mFaceConfig);
+            mFaceConfig = config;
+
+            if ((changed & FaceConfig.Field.FLIPDOT_COLOR) != 0) {
+                setFlipdotColor(config.getFlipdotColor());
+            }
+            if ((changed & FaceConfig.Field.STEP_DURATION_MS) != 0) {
+                mScheduler.setStepDurationMs(config.getStepDurationMs());
+            }
+            if ((changed & FaceConfig.Field.BURN_IN_STROKE_WIDTH) != 0) {
+                mBurnInStrokeWidth = config.getBurnInStrokeWidth();
+                updateAmbientPaints();
+            }
+            if ((changed & FaceConfig.Field.TRANSITION_MODE) != 0) {
+                mScheduler.setTransitionMode(config.getTransitionMode());
+            }
+            if ((changed & FaceConfig.Field.DISPLAY_MODE) != 0) {
+                setDisplayMode(config.getDisplayMode());
+            }
+            if ((changed & FaceConfig.Field.SHOW_SECONDS) != 0) {
+                mScheduler.setShowSeconds(config.isShowSeconds());
+            }
+        }
+
+        /**
+         * Switches between the digits and the matrix, the frame is rebuilt from the loaded
+         * sprites and the new face flips on.
+         */
+        private void setDisplayMode(int displayMode) {
+            //matrix is drawn on the main looper only
+            if (mRenderMode == RenderMode.RENDER_THREAD) {
+                displayMode = FaceConfig.DisplayMode.DIGITS;
+            }
+            if (displayMode == mDisplayMode) {
+                return;
+            }
+            mDisplayMode = displayMode;
+            mScheduler.clearDisplay();
+
+            if (mSprites != null) {
+                applySprites(mSprites);
+            }
+            if (mDisplayMode == FaceConfig.DisplayMode.DIGITS) {
+                mScheduler.startTransition();
+            }
         }
 
         @Override
@@ -283,25 +688,113 @@ public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
             mAmbientFlipdotPaint.setColor(Color.WHITE);
             mAmbientFlipdotPaint.setAntiAlias(false);
 
+            //cut is punched out of the ambient layer, black background shows through
             mAmbientFlipdotCutPaint = new Paint();
             mAmbientFlipdotCutPaint.setColor(Color.BLACK);
             mAmbientFlipdotCutPaint.setAntiAlias(false);
+            mAmbientFlipdotCutPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+
+            mAmbientLayerPaint = new Paint();
+            mAmbientLayerPaint.setColor(Color.WHITE);
+
+            mMatrixPanelPaint = new Paint();
+            mMatrixPanelPaint.setColor(MATRIX_PANEL_COLOR);
+
+            mVectorFacePaint = new Paint();
+            mVectorFacePaint.setColor(mFlipdotColor);
+
+            mFlipdotTintPaint = new Paint();
+            mFlipdotTintPaint.setFilterBitmap(true);
+
+            //low memory watches keep the sprites as alpha masks
+            ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+            if (activityManager.isLowRamDevice()) {
+                mSpriteMode = SpriteMode.TINTED;
+            }
+
+            mCanvasRenderer = new CanvasDotRenderer(mAmbientFlipdotPaint, mAmbientFlipdotCutPaint);
+            mAmbientLayerRenderer = new CanvasDotRenderer(mAmbientFlipdotPaint, mAmbientFlipdotCutPaint);
+
+            mAmbientPeekCardPaint = new Paint();
+            mAmbientPeekCardPaint.setColor(Color.BLACK);
+            mAmbientPeekCardPaint.setAntiAlias(false);
+            mAmbientPeekCardPaint.setAlpha(200);
 
-            mAmbientPeekRect = new Paint();
-            mAmbientPeekRect.setColor(Color.BLACK);
-            mAmbientPeekRect.setAntiAlias(false);
-            mAmbientPeekRect.setAlpha(200);
+            //12/24 hour format is read once here and then only when the setting changes
+            mWallClock = new WallClock(TimeZone.getDefault(),
+                    DateFormat.is24HourFormat(FlipdotCanvasWatchFaceService.this));
+            getContentResolver().registerContentObserver(Settings.System.getUriFor(Settings.System.TIME_12_24),
+                    false, mTimeFormatObserver);
 
-            mCalendar = Calendar.getInstance();
-            mDate = new Date();
+            mDigitOcclusion = new CellOcclusion(DotGrid.COLUMNS, DotGrid.ROWS);
+            mBurnInShift = new BurnInShift(BURNIN_SHIFT_RADIUS_PX);
 
-            createDigitsMatrix();
+            createSymbolMasks();
+            mScheduler = new FaceScheduler(new FaceScheduler.Host() {
+                @Override
+                public void invalidate() {
+                    FlipdotEngine.this.invalidate();
+                }
+
+                @Override
+                public void sendMessageDelayed(int what, long delayMs) {
+                    mUpdateTimeHandler.sendEmptyMessageDelayed(what, delayMs);
+                }
+
+                @Override
+                public void removeMessages(int what) {
+                    mUpdateTimeHandler.removeMessages(what);
+                }
+            }, new FaceScheduler.Clock() {
+                @Override
+                public long uptimeMillis() {
+                    return SystemClock.uptimeMillis();
+                }
+
+                @Override
+                public long currentTimeMillis() {
+                    return System.currentTimeMillis();
+                }
+            }, mWallClock, FLIPDOTS_COUNT, mSymbolMasks, mDigitDotOffsetsX, mDigitDotOffsetsY,
+                    DotGrid.LEFT, DotGrid.TOP, DotGrid.COLUMNS, DotGrid.ROWS, DotGrid.SECONDS_ROW, mFrameStats);
+            mAnimationGovernor = mScheduler.getAnimationGovernor();
+            mDirtyCells = mScheduler.getDirtyCells();
+            mFramePlanner = mScheduler.getFramePlanner();
+            if (mRenderMode == RenderMode.RENDER_THREAD) {
+                mRenderThread = new FaceRenderThread(mSymbolMasks, mDigitDotOffsetsX, mDigitDotOffsetsY,
+                        DotGrid.LEFT, DotGrid.TOP, DotGrid.COLUMNS, DotGrid.ROWS, DotGrid.SECONDS_ROW,
+                        FlipdotState.ON);
+                mRenderThread.start();
+            }
+
+            mFaceConfigListener = new FaceConfigListener(FlipdotCanvasWatchFaceService.this,
+                    new FaceConfigListener.Callback() {
+                        @Override
+                        public void onFaceConfigChanged(FaceConfig config) {
+                            applyFaceConfig(config);
+                        }
+                    });
+            mFaceConfigListener.connect();
+
+            //the face fills the screen, loading starts before the surface is created
+            DisplayMetrics metrics = getResources().getDisplayMetrics();
+            updateConstants(FlipdotSprites.estimateFlipdotWidth(metrics.widthPixels));
+            loadSprites(metrics.widthPixels, metrics.heightPixels);
         }
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            mUpdateTimeHandler.removeMessages(MSG_ON_INTERACTIVE_MSG);
+            getContentResolver().unregisterContentObserver(mTimeFormatObserver);
+            mFaceConfigListener.disconnect();
+            //pending sprites are released as they come, other engines may still use the loaded ones
+            mSpritesGeneration++;
+            dropSprites();
+            mScheduler.stop();
+            mAmbientLayers.evictAll();
+            if (mRenderThread != null) {
+                mRenderThread.quit();
+                mRenderThread = null;
+            }
             super.onDestroy();
         }
 
@@ -312,192 +805,390 @@ public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
             mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
 
+            updateAmbientPaints();
+        }
+
+        private void updateAmbientPaints() {
             mAmbientFlipdotPaint.setAntiAlias(!mLowBitAmbient);
             mAmbientFlipdotCutPaint.setAntiAlias(!mLowBitAmbient);
 
             if (mBurnInProtection) {
-                mAmbientFlipdotPaint.setStrokeWidth(BURNIN_FLIPDOT_PAINT_STROKE_WIDTH);
+                mAmbientFlipdotPaint.setStrokeWidth(mBurnInStrokeWidth);
                 mAmbientFlipdotPaint.setStyle(Paint.Style.STROKE);
             } else {
                 mAmbientFlipdotPaint.setStyle(Paint.Style.FILL);
             }
+
+            updateAmbientFlipdot();
+            mAmbientLayers.evictAll();
+            mAmbientFacePicture = null;
+            if (mScheduler.isAmbient()) {
+                invalidate();
+            }
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            mScheduler.onTimeChanged();
+        }
 
-            /* the time changed */
-            if (updateActualTime()) {
-                mInteractiveRedraw = true;
-                updateInteractiveTimer();
-            }
-
-            invalidate();
+        @Override
+        public void onUnreadCountChanged(int count) {
+            super.onUnreadCountChanged(count);
+            mScheduler.onUnreadCountChanged(count);
         }
 
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
             /* the wearable switched between modes */
-            mAmbient = inAmbientMode;
+            mAmbientFacePicture = null;
+            mScheduler.onAmbientModeChanged(inAmbientMode);
+        }
 
-            //start animation after ambient mode from closed flipdots
-            if (!mAmbient) {
-                mCurrentAnimationIndex = FlipdotState.OFF;
-                mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_FORWARD;
+        /**
+         * Redraws every dirty row of the matrix, a blit per run of dots at the same stage.
+         */
+        private void drawDirtyMatrixRows() {
+            mFrameDrawer.drawDirtyRows(mDotMatrix, mMatrixOcclusion, mMatrixLeft, mMatrixTop,
+                    mMatrixStrips.getDotSize(), mMatrixRunRenderer);
+        }
 
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_ON_INTERACTIVE_MSG, START_INTERCTIVE_MODE_OFFSET_MS);
-            } else {
-                for (int i = 0; i < ScreenDigits.DIGITS_COUNT; i++) {
-                    mInteractiveDigitsOnDisplay[i] = -1;
-                }
+        /**
+         * Redraws the dirty cells of the digits, whole digits with a single blit from the symbol atlas.
+         */
+        private void drawDirtyCells() {
+            //until the atlas is built, digits are drawn dot by dot
+            DotFrameDrawer.SymbolRenderer symbols = mSymbolAtlas != null && mRenderBackend == RenderBackend.CANVAS
+                    ? mAtlasRenderer : null;
+            CellOcclusion occlusion = mDigitOcclusion.hasHiddenCells() ? mDigitOcclusion : null;
+            mFrameDrawer.drawDirtyDigits(mDirtyCells, mFramePlanner, occlusion, symbols, mFrameRenderer);
+
+            if (mRenderBackend == RenderBackend.SOFTWARE) {
+                flushSoftwareFrame();
             }
-
-            invalidate();
-            updateInteractiveTimer();
         }
 
-        private void drawInteractiveDigit(Canvas canvas, int animationIndex, int symbol, int dotOffsetX, int dotOffsetY) {
-            int digit;
-            if (mCurrentFlipdotDirection == Direction.FLIPDOT_DIRECTION_REVERSE && mInteractiveDigitsOnDisplay[symbol] >= 0) {
-                digit = mInteractiveDigitsOnDisplay[symbol];
-            } else {
-                digit = mDigitsToDisplay[symbol];
+        /**
+         * Copies only the changed span of the software buffer into the frame bitmap.
+         */
+        private void flushSoftwareFrame() {
+            if (!mSoftwareRenderer.hasDirtyRect()) {
+                return;
             }
+            int left = mSoftwareRenderer.getDirtyLeft();
+            int top = mSoftwareRenderer.getDirtyTop();
+            int width = mSoftwareRenderer.getDirtyRight() - left;
+            int height = mSoftwareRenderer.getDirtyBottom() - top;
+            int stride = mSoftwareRenderer.getWidth();
+            mFrameBitmap.setPixels(mSoftwareRenderer.getPixels(), top * stride + left, stride, left, top, width, height);
+            mSoftwareRenderer.resetDirtyRect();
+        }
 
-            int[][] digitMatrix = mSymbolsMatrix[digit];
-            drawInteractiveSymbol(canvas, digitMatrix, animationIndex, dotOffsetX, dotOffsetY);
+        private void drawAmbientDigit(Canvas canvas, int symbol, int dotOffsetX, int dotOffsetY,
+                                      int shiftX, int shiftY, Paint paint) {
+            Bitmap layer = getAmbientLayer(mFramePlanner.getPlannedSymbol(symbol));
+
+            int xPos = (int) (mCenterX + dotOffsetX * mFlipdotBlockSize - mFlipdotXYOffset) + shiftX;
+            int yPos = (int) (mCenterY + dotOffsetY * mFlipdotBlockSize - mFlipdotXYOffset) + shiftY;
+            canvas.drawBitmap(layer, xPos, yPos, paint);
         }
 
-        private void drawInteractiveSymbol(Canvas canvas, int[][] symbolMatrix, int animationIndex, int dotOffsetX, int dotOffsetY) {
-            for (int y = 0; y < symbolMatrix.length; y++) {
-                for (int x = 0; x < symbolMatrix[y].length; x++) {
-                    if (symbolMatrix[y][x] == 1) {
-                        drawFlipdot(canvas, animationIndex, dotOffsetX + x, dotOffsetY + y);
-                    }
-                }
+        /**
+         * Stand-in for the interactive face while the sprites load: the digits drawn with the
+         * ambient dot layers in the flipdot color.
+         */
+        private void drawVectorFace(Canvas canvas) {
+            canvas.drawColor(Color.BLACK);
+
+            mFramePlanner.planAmbientFrame(mScheduler.getDigitsToDisplay());
+            for (int i = 0; i < ScreenDigits.DIGITS_COUNT; i++) {
+                drawAmbientDigit(canvas, i, mDigitDotOffsetsX[i], mDigitDotOffsetsY[i], 0, 0, mVectorFacePaint);
             }
         }
 
-        private void drawAmbientDigit(Canvas canvas, int symbol, int dotOffsetX, int dotOffsetY) {
-            int digit = mDigitsToDisplay[symbol];
-            int[][] digitMatrix = mSymbolsMatrix[digit];
-            drawAmbientSymbol(canvas, digitMatrix, dotOffsetX, dotOffsetY);
+        /**
+         * Ambient symbol rendered into an alpha mask, without anti-aliasing in low bit mode,
+         * so that it is drawn with a single blit.
+         */
+        private Bitmap getAmbientLayer(int symbol) {
+            Bitmap layer = mAmbientLayers.get(symbol);
+            if (layer == null) {
+                layer = Bitmap.createBitmap(GlyphFont3x5.WIDTH * mFlipdotBlockSize,
+                        GlyphFont3x5.HEIGHT * mFlipdotBlockSize, Bitmap.Config.ALPHA_8);
+                mAmbientLayerRenderer.setCanvas(new Canvas(layer));
+                drawAmbientSymbol(mSymbolMasks[symbol]);
+                mAmbientLayers.put(symbol, layer);
+            }
+            return layer;
         }
 
-        private void drawAmbientSymbol(Canvas canvas, int[][] symbolMatrix, int dotOffsetX, int dotOffsetY) {
-            for (int y = 0; y < symbolMatrix.length; y++) {
-                for (int x = 0; x < symbolMatrix[y].length; x++) {
-                    if (symbolMatrix[y][x] == 1) {
-                        drawAmbientFlipdot(canvas, dotOffsetX + x, dotOffsetY + y);
-                    }
-                }
+        private void drawAmbientSymbol(int symbolMask) {
+            int dotsCount = FramePlanner.collectDots(symbolMask, GlyphFont3x5.WIDTH, mSymbolDotsX, mSymbolDotsY);
+            for (int i = 0; i < dotsCount; i++) {
+                int xPos = mSymbolDotsX[i] * mFlipdotBlockSize + mFlipdotBlockSize / 2;
+                int yPos = mSymbolDotsY[i] * mFlipdotBlockSize + mFlipdotBlockSize / 2;
+                mAmbientLayerRenderer.drawAmbientFlipdot(xPos, yPos);
             }
         }
 
-        private void drawAmbientFlipdot(Canvas canvas, int dotOffsetX, int dotOffsetY) {
-            if (mCurrentAnimationIndex != FlipdotState.OFF) {
-                int xPos = (int) (mCenterX + dotOffsetX * mFlipdotBlockSize);
-                int yPos = (int) (mCenterY + dotOffsetY * mFlipdotBlockSize);
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
+            //time to issue the draw calls, rasterization by the GPU is not included
+            long startUs = FrameStats.nowUs();
+            drawFace(canvas);
+            long endUs = FrameStats.nowUs();
+
+            boolean ambient = mScheduler.isAmbient();
+            if (!ambient) {
+                mAnimationGovernor.recordFrameTimeUs(endUs - startUs);
+            }
 
-                if (mBurnInProtection) {
-                    canvas.drawCircle(xPos, yPos, mFlipdotCircleRadius / 2f, mAmbientFlipdotPaint);
-                } else {
-                    canvas.drawCircle(xPos, yPos, mFlipdotCircleRadius, mAmbientFlipdotPaint);
-                    canvas.drawCircle(xPos - mFlipdotCircleCutDeltaPos, yPos - mFlipdotCircleCutDeltaPos, mFlipdotCircleCutRadius, mAmbientFlipdotCutPaint);
+            if (mFrameStats != null) {
+                mFrameStats.recordFrame(startUs, endUs);
+                if (BuildConfig.FRAME_STATS_OVERLAY && !ambient) {
+                    drawFrameStatsOverlay(canvas);
                 }
             }
         }
 
-        private void drawFlipdot(Canvas canvas, int flipdotIndex, int dotOffsetX, int dotOffsetY) {
-            if (mCurrentAnimationIndex != FlipdotState.OFF) {
-                int xPos = (int) (mCenterX + dotOffsetX * mFlipdotBlockSize - mFlipdotXYOffset);
-                int yPos = (int) (mCenterY + dotOffsetY * mFlipdotBlockSize - mFlipdotXYOffset);
-                canvas.drawBitmap(mFlipdotBitmaps[flipdotIndex], xPos, yPos, null);
+        @Override
+        public void invalidate() {
+            if (mRenderThread != null) {
+                publishSnapshot();
+            } else {
+                super.invalidate();
             }
         }
 
-        private boolean updateActualTime() {
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            mDate.setTime(now);
-
-            boolean is24Hour = DateFormat.is24HourFormat(FlipdotCanvasWatchFaceService.this);
-            int hours;
-            if (is24Hour) {
-                hours = mCalendar.get(Calendar.HOUR_OF_DAY);
+        /**
+         * Posts what the face shows now to the render thread, in place of onDraw. The interactive
+         * digits are planned here too, so the animation timer sees which cells the next step
+         * changes.
+         */
+        private void publishSnapshot() {
+            FaceRenderThread.Snapshot snapshot;
+            boolean ambient = mScheduler.isAmbient();
+            if (ambient) {
+                //recorded digits replayed under the card of this snapshot
+                Picture picture = new Picture();
+                drawAmbientFace(picture.beginRecording((int) mWidth, (int) mHeight));
+                picture.endRecording();
+                snapshot = FaceRenderThread.Snapshot.ofPicture(picture);
+            } else if (mSprites != null) {
+                mScheduler.planInteractiveFrame();
+                mDirtyCells.commit();
+                snapshot = FaceRenderThread.Snapshot.ofDigits(mSprites, mSymbolAtlas, mFlipdotColor,
+                        mScheduler.getDigitsOnDisplay(), mScheduler.getDigitsToDisplay(),
+                        mScheduler.getCurrentAnimationIndex(),
+                        mScheduler.getTransitionMode() == FaceConfig.TransitionMode.FULL_CYCLE,
+                        mScheduler.isReverse(), mScheduler.getSeconds(), mCenterX, mCenterY, mFlipdotXYOffset);
             } else {
-                hours = mCalendar.get(Calendar.HOUR);
-                if (hours == 0) {
-                    hours = 12;
-                }
+                Picture picture = new Picture();
+                drawVectorFace(picture.beginRecording((int) mWidth, (int) mHeight));
+                picture.endRecording();
+                snapshot = FaceRenderThread.Snapshot.ofPicture(picture);
             }
-            int minutes = mCalendar.get(Calendar.MINUTE);
+            mRenderThread.post(snapshot);
 
-            boolean isChanged = mMinutes != minutes;
+            //frame drawn since the last post, if any
+            long frameUs = mRenderThread.takeFrameTimeUs();
+            if (frameUs >= 0) {
+                if (!ambient) {
+                    mAnimationGovernor.recordFrameTimeUs(frameUs);
+                }
+                if (mFrameStats != null) {
+                    long endUs = FrameStats.nowUs();
+                    mFrameStats.recordFrame(endUs - frameUs, endUs);
+                }
+            }
+        }
 
-            mHours = hours;
-            mMinutes = minutes;
+        private void drawFrameStatsOverlay(Canvas canvas) {
+            if (mFrameStatsPaint == null) {
+                mFrameStatsPaint = new Paint();
+                mFrameStatsPaint.setColor(Color.WHITE);
+                mFrameStatsPaint.setTextSize(FRAME_STATS_TEXT_SIZE_PX);
+                mFrameStatsPaint.setTextAlign(Paint.Align.CENTER);
+                mFrameStatsPaint.setAntiAlias(true);
+            }
 
-            mDigitsToDisplay[ScreenDigits.DIGIT_0] = mHours / 10;
-            mDigitsToDisplay[ScreenDigits.DIGIT_1] = mHours % 10;
-            mDigitsToDisplay[ScreenDigits.DIGIT_2] = mMinutes / 10;
-            mDigitsToDisplay[ScreenDigits.DIGIT_3] = mMinutes % 10;
+            //strings are built at most once a second, not with every animation frame
+            long nowMs = SystemClock.uptimeMillis();
+            if (mFrameStatsLinesTimeMs < 0 || nowMs - mFrameStatsLinesTimeMs >= FRAME_STATS_TEXT_RATE_MS) {
+                mFrameStatsLinesTimeMs = nowMs;
+                Histogram frameTime = mFrameStats.getFrameTime();
+                Histogram lag = mFrameStats.getSchedulingLag();
+                mFrameStatsLines[0] = "frame p50 " + frameTime.getPercentile(50) + " p90 "
+                        + frameTime.getPercentile(90) + " max " + frameTime.getMax() + " us";
+                mFrameStatsLines[1] = "lag p90 " + lag.getPercentile(90) + " max " + lag.getMax() + " us";
+                mFrameStatsLines[2] = "missed " + mFrameStats.getMissedDeadlines().getCount()
+                        + " frames/transition p50 " + mFrameStats.getFramesPerTransition().getPercentile(50);
+            }
 
-            return isChanged;
+            float lineHeight = FRAME_STATS_TEXT_SIZE_PX * 1.2f;
+            float y = mHeight - mFrameStatsLines.length * lineHeight;
+            for (int i = 0; i < mFrameStatsLines.length; i++) {
+                canvas.drawText(mFrameStatsLines[i], mCenterX, y + i * lineHeight, mFrameStatsPaint);
+            }
         }
 
         @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-            if (!mAmbient) {
-                canvas.drawBitmap(mBackgroundScaledBitmap, 0, 0, null);
-
-                if (mInteractiveRedraw) {
-                    mCurrentAnimationIndex += mCurrentFlipdotDirection;
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter out, String[] args) {
+            super.dump(prefix, fd, out, args);
+            out.print(prefix);
+            out.print("animation profile ");
+            out.print(AnimationGovernor.getProfileName(mAnimationGovernor.getProfile()));
+            out.print(", average frame time ");
+            out.print(mAnimationGovernor.getAverageFrameTimeUs());
+            out.println(" us");
+            if (mFrameStats != null) {
+                mFrameStats.dump(prefix, out);
+                if (args != null && Arrays.asList(args).contains(FRAME_STATS_RESET_ARG)) {
+                    mFrameStats.reset();
+                    mFrameStatsLinesTimeMs = -1;
+                    out.print(prefix);
+                    out.println("frame stats reset");
                 }
+            }
+        }
 
-                drawInteractiveDigit(canvas, mCurrentAnimationIndex, ScreenDigits.DIGIT_0, -3, -5);
-                drawInteractiveDigit(canvas, mCurrentAnimationIndex, ScreenDigits.DIGIT_1, 1, -5);
-                drawInteractiveDigit(canvas, mCurrentAnimationIndex, ScreenDigits.DIGIT_2, -3, 1);
-                drawInteractiveDigit(canvas, mCurrentAnimationIndex, ScreenDigits.DIGIT_3, 1, 1);
-
-                if (mCurrentAnimationIndex == FlipdotState.ON) {
-                    mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_REVERSE;
-                    //copy display values, to be used on reverse animation
-                    System.arraycopy(mDigitsToDisplay, 0, mInteractiveDigitsOnDisplay, 0, ScreenDigits.DIGITS_COUNT);
-                    //we're ON, turn off interactive animation
-                    mInteractiveRedraw = false;
-                } else if (mCurrentAnimationIndex == FlipdotState.OFF) {
-                    mCurrentFlipdotDirection = Direction.FLIPDOT_DIRECTION_FORWARD;
+        private void drawFace(Canvas canvas) {
+            if (!mScheduler.isAmbient()) {
+                if (mFrameBitmap == null && mSprites != null && mRenderMode == RenderMode.MAIN_LOOPER) {
+                    createFrame();
                 }
+                if (mFrameBitmap != null) {
+                    //animation steps are taken by the timer, here only the current step is drawn
+                    mScheduler.planInteractiveFrame();
+                    if (mDotMatrix != null) {
+                        drawDirtyMatrixRows();
+                    } else {
+                        drawDirtyCells();
+                    }
 
+                    canvas.drawBitmap(mFrameBitmap, 0, 0, null);
+                } else {
+                    drawVectorFace(canvas);
+                }
             } else {
-                canvas.drawColor(Color.BLACK);
+                drawAmbientFace(canvas);
+            }
+        }
 
-                drawAmbientDigit(canvas, ScreenDigits.DIGIT_0, -3, -5);
-                drawAmbientDigit(canvas, ScreenDigits.DIGIT_1, 1, -5);
-                drawAmbientDigit(canvas, ScreenDigits.DIGIT_2, -3, 1);
-                drawAmbientDigit(canvas, ScreenDigits.DIGIT_3, 1, 1);
+        /**
+         * Replays the ambient digits and dims them under the card. The digits are recorded again
+         * when the time on display changes, a moved card only replays them.
+         */
+        private void drawAmbientFace(Canvas canvas) {
+            int minute = mScheduler.getMinuteOfDay();
+            if (mAmbientFacePicture == null || mAmbientFaceMinute != minute) {
+                mAmbientFacePicture = recordAmbientDigits();
+                mAmbientFaceMinute = minute;
+            }
+            canvas.drawPicture(mAmbientFacePicture);
 
-                //draw black rectangle if.
-                Rect rect = mPeekRect;
-                if(rect != null && rect.height() > 0) {
-                    canvas.drawRect(rect.left, rect.top, rect.right, rect.bottom, mAmbientPeekRect);
+            //dims the digits under the card, the interactive card is translucent on its own
+            Rect rect = mPeekRect;
+            if (rect != null && rect.height() > 0) {
+                canvas.drawRect(rect.left, rect.top, rect.right, rect.bottom, mAmbientPeekCardPaint);
+            }
+        }
+
+        /**
+         * Records the ambient digits with a blit per digit.
+         */
+        private Picture recordAmbientDigits() {
+            Picture picture = new Picture();
+            Canvas canvas = picture.beginRecording((int) mWidth, (int) mHeight);
+            canvas.drawColor(Color.BLACK);
+
+            if (mScheduler.getCurrentAnimationIndex() != FlipdotState.OFF) {
+                //whole face moves around a small circle to spread pixel wear
+                int shiftX = 0;
+                int shiftY = 0;
+                if (mBurnInProtection) {
+                    int minuteOfDay = mScheduler.getMinuteOfDay();
+                    shiftX = mBurnInShift.getOffsetX(minuteOfDay);
+                    shiftY = mBurnInShift.getOffsetY(minuteOfDay);
+                }
+
+                mFramePlanner.planAmbientFrame(mScheduler.getDigitsToDisplay());
+                for (int i = 0; i < ScreenDigits.DIGITS_COUNT; i++) {
+                    int xPos = (int) (mCenterX + mDigitDotOffsetsX[i] * mFlipdotBlockSize - mFlipdotXYOffset) + shiftX;
+                    int yPos = (int) (mCenterY + mDigitDotOffsetsY[i] * mFlipdotBlockSize - mFlipdotXYOffset) + shiftY;
+                    if (mDigitOcclusion.isRectHidden(xPos, yPos, xPos + GlyphFont3x5.WIDTH * mFlipdotBlockSize,
+                            yPos + GlyphFont3x5.HEIGHT * mFlipdotBlockSize)) {
+                        continue;
+                    }
+                    drawAmbientDigit(canvas, i, mDigitDotOffsetsX[i], mDigitDotOffsetsY[i], shiftX, shiftY,
+                            mAmbientLayerPaint);
                 }
             }
+
+            picture.endRecording();
+            return picture;
         }
 
         @Override
         public void onPeekCardPositionUpdate(Rect rect) {
             super.onPeekCardPositionUpdate(rect);
-            mPeekRect = rect;
+            if (rect.equals(mPeekRect)) {
+                return;
+            }
+            mPeekRect = new Rect(rect);
 
-            //invalidate only in ambient mode.
-            if(mAmbient)
-            {
-                invalidate();
+            //interactive frames don't change under the card, the system draws it over them
+            mScheduler.onPeekCardMoved();
+        }
+
+        @Override
+        public void onApplyWindowInsets(WindowInsets insets) {
+            super.onApplyWindowInsets(insets);
+            mRoundScreen = insets.isRound();
+            mChinHeight = insets.getSystemWindowInsetBottom();
+            updateOcclusion();
+        }
+
+        /**
+         * Finds the dot cells hidden by the screen shape and the chin. Cells that came into view
+         * are redrawn with the next frame.
+         */
+        private void updateOcclusion() {
+            if (mWidth == 0) {
+                return;
             }
+
+            int left = (int) (mCenterX + DotGrid.LEFT * mFlipdotBlockSize - mFlipdotXYOffset);
+            int top = (int) (mCenterY + DotGrid.TOP * mFlipdotBlockSize - mFlipdotXYOffset);
+            setOcclusionBounds(mDigitOcclusion, left, top, mFlipdotBlockSize);
+            //the digit grid is shown whole on the screens of the watches, no cell is revealed then
+            if (mDigitOcclusion.update()) {
+                for (int row = 0; row < DotGrid.ROWS; row++) {
+                    for (int column = 0; column < DotGrid.COLUMNS; column++) {
+                        if (mDigitOcclusion.isRevealed(column, row)) {
+                            mDirtyCells.invalidateCell(column, row);
+                        }
+                    }
+                }
+            }
+
+            if (mMatrixOcclusion != null) {
+                setOcclusionBounds(mMatrixOcclusion, mMatrixLeft, mMatrixTop, mMatrixStrips.getDotSize());
+                if (mMatrixOcclusion.update()) {
+                    for (int row = 0; row < mDotMatrix.getRows(); row++) {
+                        if (mMatrixOcclusion.isRowRevealed(row)) {
+                            mDotMatrix.invalidateRow(row);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void setOcclusionBounds(CellOcclusion occlusion, int left, int top, int cellSize) {
+            occlusion.setGrid(left, top, cellSize);
+            occlusion.setScreen((int) mWidth, (int) mHeight, mRoundScreen, mChinHeight);
         }
 
         @Override
@@ -508,59 +1199,64 @@ public class FlipdotCanvasWatchFaceService extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone and date formats, in case they changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mWallClock.setTimeZone(TimeZone.getDefault());
+
+                if (mSpritesLoadFailed) {
+                    loadSprites(mSpritesWidth, mSpritesHeight);
+                }
             } else {
                 unregisterReceiver();
+                releaseFrame();
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
             // whether we're in ambient mode), so we may need to start or stop the timer.
-            updateInteractiveTimer();
+            mScheduler.onVisibilityChanged(visible);
         }
 
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-            if (mBackgroundScaledBitmap == null
-                    || mBackgroundScaledBitmap.getWidth() != width
-                    || mBackgroundScaledBitmap.getHeight() != height) {
-
-                Resources resources = FlipdotCanvasWatchFaceService.this.getResources();
-                Bitmap bitmap = ((BitmapDrawable) resources.getDrawable(R.drawable.watch_face_bg, null)).getBitmap();
-                boolean isScaled = false;
-                if(bitmap.getHeight() != height || bitmap.getWidth() != width) {
-                    mBackgroundScaledBitmap = Bitmap.createScaledBitmap(bitmap, width, height, true /* filter */);
-                    isScaled = true;
-                }else{
-                    mBackgroundScaledBitmap = bitmap;
-                }
-
-                float scaleHeigth = (mBackgroundScaledBitmap.getHeight() * 1f) / bitmap.getHeight();
-                float scaleWidth = (mBackgroundScaledBitmap.getWidth() * 1f) / bitmap.getWidth();
-
-                mFlipdotBitmaps = new Bitmap[FLIPDOTS_COUNT];
-                for (int i = 0; i < FLIPDOTS_COUNT; i++) {
-                    int id = resources.getIdentifier("flipdot_svg_tr" + i, "drawable", getPackageName());
-                    mFlipdotBitmaps[i] = ((BitmapDrawable) resources.getDrawable(id, null)).getBitmap();
-
-                    if(isScaled){
-                        mFlipdotBitmaps[i] = Bitmap.createScaledBitmap(mFlipdotBitmaps[i],
-                                (int)(mFlipdotBitmaps[i].getWidth() * scaleWidth),
-                                (int)(mFlipdotBitmaps[i].getHeight() * scaleHeigth),
-                                true /* filter */);
-                    }
-                }
-
-                updateConstants(mFlipdotBitmaps[0].getWidth());
+            if (width != mSpritesWidth || height != mSpritesHeight) {
+                //vector face is drawn until the sprites for the new size are loaded
+                dropSprites();
+                updateConstants(FlipdotSprites.estimateFlipdotWidth(width));
+                mAmbientLayers.evictAll();
+                loadSprites(width, height);
             }
 
             mWidth = width;
             mHeight = height;
+            mAmbientFacePicture = null;
 
             mCenterX = width / 2f;
             mCenterY = height / 2f;
+            mFrameDrawer.setGeometry(mCenterX, mCenterY, mFlipdotBlockSize, mFlipdotXYOffset);
+            updateOcclusion();
 
+            if (mRenderThread != null) {
+                mRenderThread.setSurface(holder);
+            }
             super.onSurfaceChanged(holder, format, width, height);
         }
+
+        @Override
+        public void onSurfaceRedrawNeeded(SurfaceHolder holder) {
+            if (mRenderThread != null) {
+                //render thread draws it, the main looper doesn't wait for the frame
+                publishSnapshot();
+            } else {
+                super.onSurfaceRedrawNeeded(holder);
+            }
+        }
+
+        @Override
+        public void onSurfaceDestroyed(SurfaceHolder holder) {
+            if (mRenderThread != null) {
+                //frame in progress is posted before the surface goes away
+                mRenderThread.setSurface(null);
+            }
+            super.onSurfaceDestroyed(holder);
+        }
     }
 
 }
@@ -0,0 +1,59 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Recolors full color sprites to another flipdot color: the lit green of the artwork turns to
+ * the color, the grays of the cell and the off side are kept. It is the share of green over
+ * the red and blue of a pixel that is recolored, so the shading of the dot stays.
+ */
+final class FlipdotColorMatrix {
+
+    //lit side of svg/flipdot_svg_on.svg
+    static final int ARTWORK_COLOR = 0xFF70FF26;
+
+    private static final int[] CHANNEL_SHIFTS = new int[]{16, 8, 0};
+    private static final int ALPHA_ROW = 15;
+
+    private FlipdotColorMatrix() {
+    }
+
+    /**
+     * @return 4x5 matrix over non-premultiplied RGBA, in the layout of android.graphics.ColorMatrix
+     */
+    static float[] create(int color) {
+        float artworkGreen = getGreenExcess(ARTWORK_COLOR);
+        float[] matrix = new float[20];
+        for (int i = 0; i < CHANNEL_SHIFTS.length; i++) {
+            int shift = CHANNEL_SHIFTS[i];
+            float scale = (((color >> shift) & 0xFF) - ((ARTWORK_COLOR >> shift) & 0xFF)) / artworkGreen;
+            int row = i * 5;
+            matrix[row] = -scale / 2;
+            matrix[row + 1] = scale;
+            matrix[row + 2] = -scale / 2;
+            matrix[row + i] += 1;
+        }
+        matrix[ALPHA_ROW + 3] = 1;
+        return matrix;
+    }
+
+    /**
+     * @return non-premultiplied ARGB pixel recolored by the matrix
+     */
+    static int apply(float[] matrix, int pixel) {
+        int red = (pixel >> 16) & 0xFF;
+        int green = (pixel >> 8) & 0xFF;
+        int blue = pixel & 0xFF;
+        int result = pixel & 0xFF000000;
+        for (int i = 0; i < CHANNEL_SHIFTS.length; i++) {
+            int row = i * 5;
+            int value = Math.round(matrix[row] * red + matrix[row + 1] * green + matrix[row + 2] * blue
+                    + matrix[row + 4]);
+            result |= Math.max(0, Math.min(0xFF, value)) << CHANNEL_SHIFTS[i];
+        }
+        return result;
+    }
+
+    //zero for grays
+    private static float getGreenExcess(int color) {
+        return ((color >> 8) & 0xFF) - (((color >> 16) & 0xFF) + (color & 0xFF)) / 2f;
+    }
+}
@@ -0,0 +1,325 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Background and flip animation frames rasterized by the generateFlipdotSprites build task,
+ * one set per screen size in assets/flipdots/&lt;width&gt;x&lt;height&gt;. A screen without its own set
+ * gets the nearest one scaled.
+ * <p>
+ * Frames are kept either as full color bitmaps or, tinted, as a single ALPHA_8 strip of all
+ * frames. Either is colored by the paint at draw time, see {@link #createFlipdotFilter}.
+ */
+final class FlipdotSprites {
+
+    interface Callback {
+        void onSpritesLoaded(FlipdotSprites sprites);
+
+        void onSpritesFailed(IOException error);
+    }
+
+    private static final String TAG = "FlipdotSprites";
+
+    private static final String SPRITES_DIR = "flipdots";
+    private static final String BACKGROUND_FILE = "background.png";
+
+    //frame file names, one per animation index
+    private static final String[] FLIPDOT_FILES = new String[BuildConfig.FLIPDOTS_COUNT];
+
+    static {
+        for (int i = 0; i < FLIPDOT_FILES.length; i++) {
+            FLIPDOT_FILES[i] = "flipdot_" + i + ".png";
+        }
+    }
+
+    //sprite size of the source artwork, the generated sets keep its proportion to the screen
+    private static final int REFERENCE_SCREEN_SIZE = 320;
+    private static final int REFERENCE_FLIPDOT_SIZE = 20;
+
+    private final Bitmap mBackground;
+    //full color frames, null when tinted
+    private final Bitmap[] mFlipdots;
+    //alpha of all frames side by side, null when full color
+    private final Bitmap mFlipdotMasks;
+    private final int mFlipdotWidth;
+    private final int mFlipdotHeight;
+
+    private FlipdotSprites(Bitmap background, Bitmap[] flipdots, Bitmap flipdotMasks,
+                           int flipdotWidth, int flipdotHeight) {
+        mBackground = background;
+        mFlipdots = flipdots;
+        mFlipdotMasks = flipdotMasks;
+        mFlipdotWidth = flipdotWidth;
+        mFlipdotHeight = flipdotHeight;
+    }
+
+    /**
+     * @return width of a flipdot sprite on a screen of the given width, known before loading
+     */
+    static int estimateFlipdotWidth(int screenWidth) {
+        return Math.round(REFERENCE_FLIPDOT_SIZE * screenWidth / (float) REFERENCE_SCREEN_SIZE);
+    }
+
+    int getWidth() {
+        return mBackground.getWidth();
+    }
+
+    int getHeight() {
+        return mBackground.getHeight();
+    }
+
+    Bitmap getBackground() {
+        return mBackground;
+    }
+
+    boolean isTinted() {
+        return mFlipdotMasks != null;
+    }
+
+    int getFlipdotsCount() {
+        return FLIPDOT_FILES.length;
+    }
+
+    int getFlipdotWidth() {
+        return mFlipdotWidth;
+    }
+
+    int getFlipdotHeight() {
+        return mFlipdotHeight;
+    }
+
+    /**
+     * @return bitmap holding the frame, its area in the bitmap is given by {@link #getFlipdotRect}
+     */
+    Bitmap getFlipdotBitmap(int animationIndex) {
+        return mFlipdotMasks != null ? mFlipdotMasks : mFlipdots[animationIndex];
+    }
+
+    void getFlipdotRect(int animationIndex, Rect rect) {
+        int left = mFlipdotMasks != null ? animationIndex * mFlipdotWidth : 0;
+        rect.set(left, 0, left + mFlipdotWidth, mFlipdotHeight);
+    }
+
+    /**
+     * @return filter of the paint drawing the frames in the given color, null when the frames
+     * are drawn as they are
+     */
+    ColorFilter createFlipdotFilter(int color) {
+        if (mFlipdotMasks != null) {
+            return new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_IN);
+        }
+        //default color keeps the artwork
+        if (color == FaceConfig.DEFAULT_FLIPDOT_COLOR) {
+            return null;
+        }
+        return new ColorMatrixColorFilter(FlipdotColorMatrix.create(color));
+    }
+
+    /**
+     * Non-premultiplied pixels of the frame in the given color, as drawn with
+     * {@link #createFlipdotFilter}.
+     */
+    void getFlipdotPixels(int animationIndex, int color, int[] pixels) {
+        Bitmap bitmap = getFlipdotBitmap(animationIndex);
+        int left = mFlipdotMasks != null ? animationIndex * mFlipdotWidth : 0;
+        bitmap.getPixels(pixels, 0, mFlipdotWidth, left, 0, mFlipdotWidth, mFlipdotHeight);
+
+        if (mFlipdotMasks != null) {
+            int rgb = color & 0x00FFFFFF;
+            for (int i = 0; i < mFlipdotWidth * mFlipdotHeight; i++) {
+                pixels[i] = (pixels[i] & 0xFF000000) | rgb;
+            }
+        } else if (color != FaceConfig.DEFAULT_FLIPDOT_COLOR) {
+            float[] matrix = FlipdotColorMatrix.create(color);
+            for (int i = 0; i < mFlipdotWidth * mFlipdotHeight; i++) {
+                pixels[i] = FlipdotColorMatrix.apply(matrix, pixels[i]);
+            }
+        }
+    }
+
+    /**
+     * Loads the sprites on a background thread. The result or the failure is posted to the
+     * given handler.
+     */
+    static void loadAsync(final AssetManager assets, final int width, final int height, final boolean tinted,
+                          final Handler handler, final Callback callback) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                //the face waits for the sprites, background priority would delay them
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+
+                final FlipdotSprites sprites;
+                try {
+                    sprites = load(assets, width, height, tinted);
+                } catch (final IOException e) {
+                    Log.e(TAG, "can't load sprites for " + width + "x" + height, e);
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onSpritesFailed(e);
+                        }
+                    });
+                    return;
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSpritesLoaded(sprites);
+                    }
+                });
+            }
+        }, "FlipdotSpritesLoader");
+        thread.start();
+    }
+
+    static FlipdotSprites load(AssetManager assets, int width, int height, boolean tinted) throws IOException {
+        String screenSize = findNearestScreenSize(assets, width, height);
+        if (screenSize == null) {
+            throw new IOException("no flipdot sprites in assets/" + SPRITES_DIR);
+        }
+
+        //opaque background is decoded to RGB_565, with transparency it stays ARGB_8888
+        String dir = SPRITES_DIR + "/" + screenSize + "/";
+        Bitmap background = decode(assets, dir + BACKGROUND_FILE, Bitmap.Config.RGB_565);
+        Bitmap[] flipdots = new Bitmap[FLIPDOT_FILES.length];
+        for (int i = 0; i < FLIPDOT_FILES.length; i++) {
+            flipdots[i] = decode(assets, dir + FLIPDOT_FILES[i], Bitmap.Config.ARGB_8888);
+        }
+
+        if (background.getWidth() != width || background.getHeight() != height) {
+            float scaleWidth = (width * 1f) / background.getWidth();
+            float scaleHeight = (height * 1f) / background.getHeight();
+            for (int i = 0; i < flipdots.length; i++) {
+                Bitmap flipdot = flipdots[i];
+                flipdots[i] = Bitmap.createScaledBitmap(flipdot,
+                        Math.round(flipdot.getWidth() * scaleWidth),
+                        Math.round(flipdot.getHeight() * scaleHeight),
+                        true /* filter */);
+                flipdot.recycle();
+            }
+            Bitmap scaledBackground = Bitmap.createScaledBitmap(background, width, height, true /* filter */);
+            background.recycle();
+            background = scaledBackground;
+        }
+
+        int flipdotWidth = flipdots[0].getWidth();
+        int flipdotHeight = flipdots[0].getHeight();
+        if (!tinted) {
+            return new FlipdotSprites(background, flipdots, null, flipdotWidth, flipdotHeight);
+        }
+
+        Bitmap flipdotMasks = createFlipdotMasks(flipdots);
+        for (Bitmap flipdot : flipdots) {
+            flipdot.recycle();
+        }
+        return new FlipdotSprites(background, null, flipdotMasks, flipdotWidth, flipdotHeight);
+    }
+
+    /**
+     * Alpha of a frame pixel is its brightness above the darkest pixel of the animation times
+     * its coverage, so the cell frame is transparent, the lit side of the dot is opaque and the
+     * antialiased edge of the dot fades out like in the full color frames. The off side keeps
+     * the share it gets from its brightness.
+     */
+    private static Bitmap createFlipdotMasks(Bitmap[] flipdots) {
+        int width = flipdots[0].getWidth();
+        int height = flipdots[0].getHeight();
+        int[] pixels = new int[width * height];
+
+        int darkest = 255;
+        int brightest = 0;
+        for (Bitmap flipdot : flipdots) {
+            flipdot.getPixels(pixels, 0, width, 0, 0, width, height);
+            for (int pixel : pixels) {
+                //color of uncovered pixels is undefined, they count as black
+                int luminance = Color.alpha(pixel) == 0 ? 0 : luminance(pixel);
+                darkest = Math.min(darkest, luminance);
+                brightest = Math.max(brightest, luminance);
+            }
+        }
+        int range = Math.max(1, brightest - darkest);
+
+        Bitmap masks = Bitmap.createBitmap(width * flipdots.length, height, Bitmap.Config.ALPHA_8);
+        int rowBytes = masks.getRowBytes();
+        byte[] alphas = new byte[rowBytes * height];
+        for (int i = 0; i < flipdots.length; i++) {
+            flipdots[i].getPixels(pixels, 0, width, 0, 0, width, height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int pixel = pixels[y * width + x];
+                    int alpha = (luminance(pixel) - darkest) * Color.alpha(pixel) / range;
+                    alphas[y * rowBytes + i * width + x] = (byte) alpha;
+                }
+            }
+        }
+        masks.copyPixelsFromBuffer(ByteBuffer.wrap(alphas));
+        return masks;
+    }
+
+    private static int luminance(int pixel) {
+        int r = (pixel >> 16) & 0xFF;
+        int g = (pixel >> 8) & 0xFF;
+        int b = pixel & 0xFF;
+        return (r * 299 + g * 587 + b * 114) / 1000;
+    }
+
+    private static String findNearestScreenSize(AssetManager assets, int width, int height) throws IOException {
+        String nearest = null;
+        int nearestDistance = Integer.MAX_VALUE;
+        String[] screenSizes = assets.list(SPRITES_DIR);
+        if (screenSizes == null) {
+            return null;
+        }
+        for (String screenSize : screenSizes) {
+            int separator = screenSize.indexOf('x');
+            if (separator <= 0) {
+                continue;
+            }
+            int distance;
+            try {
+                distance = Math.abs(Integer.parseInt(screenSize.substring(0, separator)) - width)
+                        + Math.abs(Integer.parseInt(screenSize.substring(separator + 1)) - height);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (distance < nearestDistance) {
+                nearest = screenSize;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static Bitmap decode(AssetManager assets, String path, Bitmap.Config config) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inPreferredConfig = config;
+
+        InputStream stream = assets.open(path);
+        try {
+            Bitmap bitmap = BitmapFactory.decodeStream(stream, null, options);
+            if (bitmap == null) {
+                throw new IOException("can't decode " + path);
+            }
+            return bitmap;
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Plans the sprite of every dot cell for the next frame, the part of drawing that needs no
+ * canvas. Digits are placed at their offsets in dots relative to the screen center, cells are
+ * counted from the top left corner of the grid.
+ */
+final class FramePlanner {
+
+    //digit with dots at different animation stages, it can't be drawn as a whole
+    static final int MIXED_ANIMATION_INDEX = -1;
+
+    private static final int OFF_INDEX = 0;
+
+    private final int[] mSymbolMasks;
+    private final int mSymbolColumns;
+    private final int mOnIndex;
+
+    private final int[] mDigitDotOffsetsX;
+    private final int[] mDigitDotOffsetsY;
+    private final int mGridLeft;
+    private final int mGridTop;
+
+    private final DirtyCellTracker mCells;
+
+    private final int[] mPlannedSymbols;
+    private final int[] mPlannedAnimationIndexes;
+
+    FramePlanner(int[] symbolMasks, int symbolColumns, int onIndex,
+                 int[] digitDotOffsetsX, int[] digitDotOffsetsY, int gridLeft, int gridTop,
+                 DirtyCellTracker cells) {
+        mSymbolMasks = symbolMasks;
+        mSymbolColumns = symbolColumns;
+        mOnIndex = onIndex;
+
+        mDigitDotOffsetsX = digitDotOffsetsX;
+        mDigitDotOffsetsY = digitDotOffsetsY;
+        mGridLeft = gridLeft;
+        mGridTop = gridTop;
+
+        mCells = cells;
+
+        mPlannedSymbols = new int[digitDotOffsetsX.length];
+        mPlannedAnimationIndexes = new int[digitDotOffsetsX.length];
+    }
+
+    int getPlannedSymbol(int digit) {
+        return mPlannedSymbols[digit];
+    }
+
+    int getPlannedAnimationIndex(int digit) {
+        return mPlannedAnimationIndexes[digit];
+    }
+
+    /**
+     * Plans a frame of the full cycle transition: on the reverse pass the digits on display
+     * flip off, on the forward pass the new digits flip on.
+     *
+     * @param digitsOnDisplay digits shown before the transition, -1 if none
+     */
+    void planFullCycleFrame(int[] digitsOnDisplay, int[] digitsToDisplay, int animationIndex, boolean isReverse) {
+        mCells.beginFrame();
+        for (int i = 0; i < mDigitDotOffsetsX.length; i++) {
+            int digit;
+            if (isReverse && digitsOnDisplay[i] >= 0) {
+                digit = digitsOnDisplay[i];
+            } else {
+                digit = digitsToDisplay[i];
+            }
+
+            mPlannedSymbols[i] = digit;
+            mPlannedAnimationIndexes[i] = animationIndex;
+
+            planSymbol(mSymbolMasks[digit], animationIndex, mDigitDotOffsetsX[i], mDigitDotOffsetsY[i]);
+        }
+    }
+
+    /**
+     * Plans a frame of the changed dots transition: dots lit in both the digit on display and
+     * the new one stay ON, dots only in the new digit flip on and dots only in the old digit
+     * flip off.
+     *
+     * @param digitsOnDisplay digits shown before the transition, -1 if none
+     */
+    void planChangedDotsFrame(int[] digitsOnDisplay, int[] digitsToDisplay, int animationIndex) {
+        mCells.beginFrame();
+        for (int i = 0; i < mDigitDotOffsetsX.length; i++) {
+            int digitOnDisplay = digitsOnDisplay[i];
+            int digit = digitsToDisplay[i];
+
+            int fromMask = digitOnDisplay >= 0 ? mSymbolMasks[digitOnDisplay] : 0;
+            int toMask = mSymbolMasks[digit];
+            int changedMask = fromMask ^ toMask;
+
+            mPlannedSymbols[i] = digit;
+            if (changedMask == 0) {
+                mPlannedAnimationIndexes[i] = mOnIndex;
+            } else if (fromMask == 0) {
+                mPlannedAnimationIndexes[i] = animationIndex;
+            } else {
+                mPlannedAnimationIndexes[i] = MIXED_ANIMATION_INDEX;
+            }
+
+            int dotOffsetX = mDigitDotOffsetsX[i];
+            int dotOffsetY = mDigitDotOffsetsY[i];
+            planSymbol(toMask & ~changedMask, mOnIndex, dotOffsetX, dotOffsetY);
+            planSymbol(toMask & changedMask, animationIndex, dotOffsetX, dotOffsetY);
+            planSymbol(fromMask & changedMask, mOnIndex - animationIndex, dotOffsetX, dotOffsetY);
+        }
+    }
+
+    /**
+     * Ambient digits are drawn as whole symbols, only the symbols are planned.
+     */
+    void planAmbientFrame(int[] digitsToDisplay) {
+        for (int i = 0; i < mDigitDotOffsetsX.length; i++) {
+            mPlannedSymbols[i] = digitsToDisplay[i];
+            mPlannedAnimationIndexes[i] = mOnIndex;
+        }
+    }
+
+    void planSymbol(int symbolMask, int animationIndex, int dotOffsetX, int dotOffsetY) {
+        if (animationIndex == OFF_INDEX) {
+            return;
+        }
+        //visit lit dots only, lowest bit first
+        for (int dots = symbolMask; dots != 0; dots &= dots - 1) {
+            int bit = Integer.numberOfTrailingZeros(dots);
+            mCells.setCell(dotOffsetX + bit % mSymbolColumns - mGridLeft,
+                    dotOffsetY + bit / mSymbolColumns - mGridTop, animationIndex);
+        }
+    }
+
+    /**
+     * Collects the positions of the lit dots of a symbol, in dots from its top left corner.
+     *
+     * @return number of lit dots
+     */
+    static int collectDots(int symbolMask, int symbolColumns, int[] dotsX, int[] dotsY) {
+        int count = 0;
+        for (int dots = symbolMask; dots != 0; dots &= dots - 1) {
+            int bit = Integer.numberOfTrailingZeros(dots);
+            dotsX[count] = bit % symbolColumns;
+            dotsY[count] = bit / symbolColumns;
+            count++;
+        }
+        return count;
+    }
+}
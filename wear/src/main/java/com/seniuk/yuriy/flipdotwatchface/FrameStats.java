@@ -0,0 +1,112 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.io.PrintWriter;
+
+/**
+ * Timing of the face in the field: how long frames take, how late the animation timer fires,
+ * how many frames a transition takes and by how much frames miss the animation step.
+ * <p>
+ * Times are recorded in microseconds. Only created when enabled, callers skip recording when
+ * they hold no instance.
+ */
+final class FrameStats {
+
+    private static final long[] TIME_BOUNDS_US = new long[]{
+            250, 500, 1000, 2000, 4000, 8000, 16000, 33000, 50000, 100000, 250000, 1000000
+    };
+    private static final long[] FRAMES_BOUNDS = new long[]{1, 2, 4, 6, 8, 12, 16, 24, 32, 64};
+
+    private final long mStepBudgetUs;
+
+    private final Histogram mFrameTime = new Histogram("frame time", "us", TIME_BOUNDS_US);
+    private final Histogram mSchedulingLag = new Histogram("scheduling lag", "us", TIME_BOUNDS_US);
+    private final Histogram mMissedDeadlines = new Histogram("missed deadlines, over budget", "us", TIME_BOUNDS_US);
+    private final Histogram mFramesPerTransition = new Histogram("frames per transition", "frames", FRAMES_BOUNDS);
+    private final Histogram mSpritesLoadTime = new Histogram("sprites load time", "us", TIME_BOUNDS_US);
+
+    //counted on the engine thread only
+    private int mTransitionFrames = -1;
+
+    FrameStats(long stepBudgetMs) {
+        mStepBudgetUs = stepBudgetMs * 1000;
+    }
+
+    static long nowUs() {
+        return System.nanoTime() / 1000;
+    }
+
+    /**
+     * A frame is late when drawing it took longer than an animation step.
+     */
+    void recordFrame(long startUs, long endUs) {
+        long frameUs = endUs - startUs;
+        mFrameTime.record(frameUs);
+        if (frameUs > mStepBudgetUs) {
+            mMissedDeadlines.record(frameUs - mStepBudgetUs);
+        }
+        if (mTransitionFrames >= 0) {
+            mTransitionFrames++;
+        }
+    }
+
+    /**
+     * A timer message late by a whole animation step makes the animation skip a stage.
+     */
+    void recordSchedulingLag(long lagUs) {
+        mSchedulingLag.record(lagUs);
+        if (lagUs >= mStepBudgetUs) {
+            mMissedDeadlines.record(lagUs - mStepBudgetUs);
+        }
+    }
+
+    void recordSpritesLoad(long startUs, long endUs) {
+        mSpritesLoadTime.record(endUs - startUs);
+    }
+
+    void beginTransition() {
+        mTransitionFrames = 0;
+    }
+
+    void endTransition() {
+        if (mTransitionFrames >= 0) {
+            mFramesPerTransition.record(mTransitionFrames);
+            mTransitionFrames = -1;
+        }
+    }
+
+    Histogram getFrameTime() {
+        return mFrameTime;
+    }
+
+    Histogram getSchedulingLag() {
+        return mSchedulingLag;
+    }
+
+    Histogram getMissedDeadlines() {
+        return mMissedDeadlines;
+    }
+
+    Histogram getFramesPerTransition() {
+        return mFramesPerTransition;
+    }
+
+    void reset() {
+        mFrameTime.reset();
+        mSchedulingLag.reset();
+        mMissedDeadlines.reset();
+        mFramesPerTransition.reset();
+        mSpritesLoadTime.reset();
+    }
+
+    void dump(String prefix, PrintWriter out) {
+        out.print(prefix);
+        out.print("frame stats, step budget ");
+        out.print(mStepBudgetUs);
+        out.println(" us");
+        mFrameTime.dump(prefix + "  ", out);
+        mSchedulingLag.dump(prefix + "  ", out);
+        mMissedDeadlines.dump(prefix + "  ", out);
+        mFramesPerTransition.dump(prefix + "  ", out);
+        mSpritesLoadTime.dump(prefix + "  ", out);
+    }
+}
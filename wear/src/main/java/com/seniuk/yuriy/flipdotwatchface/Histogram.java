@@ -0,0 +1,113 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of values in fixed buckets, recorded without locks or allocation from any thread.
+ * Bucket i holds values up to bounds[i], the last bucket holds everything above.
+ */
+final class Histogram {
+
+    private final String mName;
+    private final String mUnit;
+    private final long[] mBounds;
+    private final AtomicLongArray mCounts;
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+
+    Histogram(String name, String unit, long[] bounds) {
+        mName = name;
+        mUnit = unit;
+        mBounds = bounds;
+        mCounts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    void record(long value) {
+        int bucket = 0;
+        while (bucket < mBounds.length && value > mBounds[bucket]) {
+            bucket++;
+        }
+        mCounts.incrementAndGet(bucket);
+        mSum.addAndGet(value);
+
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < mCounts.length(); i++) {
+            count += mCounts.get(i);
+        }
+        return count;
+    }
+
+    long getMax() {
+        return getCount() == 0 ? 0 : mMax.get();
+    }
+
+    long getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * @return upper bound of the bucket holding the given percentile, max for the last bucket
+     */
+    long getPercentile(int percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (count * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < mBounds.length; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(mBounds[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    void reset() {
+        for (int i = 0; i < mCounts.length(); i++) {
+            mCounts.set(i, 0);
+        }
+        mSum.set(0);
+        mMax.set(Long.MIN_VALUE);
+    }
+
+    void dump(String prefix, PrintWriter out) {
+        out.print(prefix);
+        out.print(mName);
+        out.print(": count=");
+        out.print(getCount());
+        out.print(" mean=");
+        out.print(getMean());
+        out.print(" p50<=");
+        out.print(getPercentile(50));
+        out.print(" p90<=");
+        out.print(getPercentile(90));
+        out.print(" p99<=");
+        out.print(getPercentile(99));
+        out.print(" max=");
+        out.print(getMax());
+        out.print(' ');
+        out.println(mUnit);
+
+        out.print(prefix);
+        out.print("  ");
+        for (int i = 0; i < mCounts.length(); i++) {
+            out.print(i < mBounds.length ? "<=" + mBounds[i] : ">" + mBounds[mBounds.length - 1]);
+            out.print(':');
+            out.print(mCounts.get(i));
+            out.print(' ');
+        }
+        out.println();
+    }
+}
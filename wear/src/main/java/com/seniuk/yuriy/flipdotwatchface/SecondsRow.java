@@ -0,0 +1,34 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Seconds on a row of seven dots: the middle dot flips every second like a colon, the dots on
+ * both sides of it fill up from the left, one per ten seconds. A second changes the tick and at
+ * most one fill dot, except at :00 when the five fill dots of the last minute are cleared.
+ */
+final class SecondsRow {
+
+    static final int COLUMNS = 7;
+
+    private static final int TICK_COLUMN = COLUMNS / 2;
+    private static final int SECONDS_PER_DOT = 10;
+
+    private SecondsRow() {
+    }
+
+    /**
+     * Plans the row into cells already planned for the frame.
+     */
+    static void plan(DirtyCellTracker cells, int row, int seconds, int onIndex) {
+        int litDots = seconds / SECONDS_PER_DOT;
+        int dot = 0;
+        for (int column = 0; column < COLUMNS; column++) {
+            boolean isLit;
+            if (column == TICK_COLUMN) {
+                isLit = seconds % 2 == 0;
+            } else {
+                isLit = dot++ < litDots;
+            }
+            cells.setCell(column, row, isLit ? onIndex : DirtyCellTracker.EMPTY);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single slot hand-off of immutable snapshots to one consumer thread. A snapshot posted before
+ * the previous one was taken replaces it, so the consumer always gets the newest one and never
+ * falls behind. Posting doesn't block or lock, the consumer parks while the slot is empty.
+ */
+final class SnapshotMailbox<T> {
+
+    private final AtomicReference<T> mSlot = new AtomicReference<>();
+    private volatile Thread mConsumer;
+
+    /**
+     * @return true if a snapshot not taken yet was replaced
+     */
+    boolean post(T snapshot) {
+        T replaced = mSlot.getAndSet(snapshot);
+        //registered before the consumer looks at the slot, so a wakeup is never lost
+        Thread consumer = mConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return replaced != null;
+    }
+
+    /**
+     * @return newest snapshot, null if none was posted since the last one was taken
+     */
+    T poll() {
+        return mSlot.getAndSet(null);
+    }
+
+    /**
+     * Waits for a snapshot on the consumer thread.
+     *
+     * @return newest snapshot, null if the thread was interrupted
+     */
+    T take() {
+        mConsumer = Thread.currentThread();
+        T snapshot;
+        while ((snapshot = mSlot.getAndSet(null)) == null) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                return null;
+            }
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,257 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java renderer writing straight into a reusable ARGB pixel buffer, so frames can be
+ * rendered and compared off device. Sprites are blended over the buffer, ambient dots are
+ * filled without anti-aliasing. Everything is clipped to the buffer.
+ * <p>
+ * The rectangle changed since the last {@link #resetDirtyRect()} is tracked, so only that
+ * part has to be copied to the screen.
+ */
+final class SoftwareDotRenderer implements DotRenderer {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPixels;
+    private final int[] mBackgroundPixels;
+
+    private final int[][] mFlipdotPixels;
+    private final int mFlipdotWidth;
+    private final int mFlipdotHeight;
+
+    private int mAmbientColor = 0xFFFFFFFF;
+    private int mAmbientCutColor = 0xFF000000;
+    private float mRadius;
+    private float mCutRadius;
+    private float mCutDeltaPos;
+    private boolean mBurnInProtection;
+    private float mBurnInStrokeWidth;
+
+    private int mDirtyLeft;
+    private int mDirtyTop;
+    private int mDirtyRight;
+    private int mDirtyBottom;
+
+    /**
+     * @param backgroundPixels background of the buffer size, copied into the buffer
+     * @param flipdotPixels    sprite pixels of every animation stage, all of the same size
+     */
+    SoftwareDotRenderer(int width, int height, int[] backgroundPixels,
+                        int[][] flipdotPixels, int flipdotWidth, int flipdotHeight) {
+        mWidth = width;
+        mHeight = height;
+        mPixels = new int[width * height];
+        mBackgroundPixels = backgroundPixels;
+
+        mFlipdotPixels = flipdotPixels;
+        mFlipdotWidth = flipdotWidth;
+        mFlipdotHeight = flipdotHeight;
+
+        System.arraycopy(backgroundPixels, 0, mPixels, 0, mPixels.length);
+        markDirty(0, 0, width, height);
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int[] getPixels() {
+        return mPixels;
+    }
+
+    void setAmbientColors(int color, int cutColor) {
+        mAmbientColor = color;
+        mAmbientCutColor = cutColor;
+    }
+
+    @Override
+    public void setAmbientFlipdot(float radius, float cutRadius, float cutDeltaPos,
+                                  boolean burnInProtection, float burnInStrokeWidth) {
+        mRadius = radius;
+        mCutRadius = cutRadius;
+        mCutDeltaPos = cutDeltaPos;
+        mBurnInProtection = burnInProtection;
+        mBurnInStrokeWidth = burnInStrokeWidth;
+    }
+
+    void clear(int color) {
+        Arrays.fill(mPixels, color);
+        markDirty(0, 0, mWidth, mHeight);
+    }
+
+    @Override
+    public void drawBackground(int left, int top, int right, int bottom) {
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, mWidth);
+        bottom = Math.min(bottom, mHeight);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        for (int y = top; y < bottom; y++) {
+            int offset = y * mWidth + left;
+            System.arraycopy(mBackgroundPixels, offset, mPixels, offset, right - left);
+        }
+        markDirty(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawFlipdot(int animationIndex, int left, int top) {
+        int[] sprite = mFlipdotPixels[animationIndex];
+
+        int x0 = Math.max(left, 0);
+        int y0 = Math.max(top, 0);
+        int x1 = Math.min(left + mFlipdotWidth, mWidth);
+        int y1 = Math.min(top + mFlipdotHeight, mHeight);
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+
+        for (int y = y0; y < y1; y++) {
+            int srcOffset = (y - top) * mFlipdotWidth - left;
+            int dstOffset = y * mWidth;
+            for (int x = x0; x < x1; x++) {
+                int src = sprite[srcOffset + x];
+                int alpha = src >>> 24;
+                if (alpha == 0xFF) {
+                    mPixels[dstOffset + x] = src;
+                } else if (alpha != 0) {
+                    mPixels[dstOffset + x] = blend(src, mPixels[dstOffset + x], alpha);
+                }
+            }
+        }
+        markDirty(x0, y0, x1, y1);
+    }
+
+    @Override
+    public void drawAmbientFlipdot(int centerX, int centerY) {
+        if (mBurnInProtection) {
+            float halfStroke = mBurnInStrokeWidth / 2f;
+            fillRing(centerX, centerY, mRadius / 2f - halfStroke, mRadius / 2f + halfStroke, mAmbientColor);
+        } else {
+            fillRing(centerX, centerY, 0, mRadius, mAmbientColor);
+            fillRing(centerX - mCutDeltaPos, centerY - mCutDeltaPos, 0, mCutRadius, mAmbientCutColor);
+        }
+    }
+
+    /**
+     * Fills pixels whose centers lie between the inner and the outer radius, span by span.
+     */
+    private void fillRing(float centerX, float centerY, float innerRadius, float outerRadius, int color) {
+        int y0 = Math.max((int) Math.floor(centerY - outerRadius), 0);
+        int y1 = Math.min((int) Math.ceil(centerY + outerRadius), mHeight - 1);
+        float outer2 = outerRadius * outerRadius;
+        float inner2 = innerRadius > 0 ? innerRadius * innerRadius : -1;
+
+        for (int y = y0; y <= y1; y++) {
+            float dy = y + 0.5f - centerY;
+            float dy2 = dy * dy;
+            if (dy2 > outer2) {
+                continue;
+            }
+            float outerHalf = (float) Math.sqrt(outer2 - dy2);
+            if (dy2 >= inner2) {
+                fillSpan(y, centerX - outerHalf, centerX + outerHalf, color);
+            } else {
+                float innerHalf = (float) Math.sqrt(inner2 - dy2);
+                fillSpan(y, centerX - outerHalf, centerX - innerHalf, color);
+                fillSpan(y, centerX + innerHalf, centerX + outerHalf, color);
+            }
+        }
+    }
+
+    //fills pixels whose centers lie within [from, to]
+    private void fillSpan(int y, float from, float to, int color) {
+        int x0 = Math.max((int) Math.ceil(from - 0.5f), 0);
+        int x1 = Math.min((int) Math.floor(to - 0.5f), mWidth - 1);
+        if (x0 > x1) {
+            return;
+        }
+        int offset = y * mWidth;
+        Arrays.fill(mPixels, offset + x0, offset + x1 + 1, color);
+        markDirty(x0, y, x1 + 1, y + 1);
+    }
+
+    private static int blend(int src, int dst, int alpha) {
+        int inverse = 0xFF - alpha;
+        int dstAlpha = dst >>> 24;
+        int outAlpha = alpha + dstAlpha * inverse / 0xFF;
+        int r = (((src >> 16) & 0xFF) * alpha + ((dst >> 16) & 0xFF) * inverse) / 0xFF;
+        int g = (((src >> 8) & 0xFF) * alpha + ((dst >> 8) & 0xFF) * inverse) / 0xFF;
+        int b = ((src & 0xFF) * alpha + (dst & 0xFF) * inverse) / 0xFF;
+        return (outAlpha << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private void markDirty(int left, int top, int right, int bottom) {
+        if (mDirtyLeft >= mDirtyRight || mDirtyTop >= mDirtyBottom) {
+            mDirtyLeft = left;
+            mDirtyTop = top;
+            mDirtyRight = right;
+            mDirtyBottom = bottom;
+        } else {
+            mDirtyLeft = Math.min(mDirtyLeft, left);
+            mDirtyTop = Math.min(mDirtyTop, top);
+            mDirtyRight = Math.max(mDirtyRight, right);
+            mDirtyBottom = Math.max(mDirtyBottom, bottom);
+        }
+    }
+
+    boolean hasDirtyRect() {
+        return mDirtyLeft < mDirtyRight && mDirtyTop < mDirtyBottom;
+    }
+
+    int getDirtyLeft() {
+        return mDirtyLeft;
+    }
+
+    int getDirtyTop() {
+        return mDirtyTop;
+    }
+
+    int getDirtyRight() {
+        return mDirtyRight;
+    }
+
+    int getDirtyBottom() {
+        return mDirtyBottom;
+    }
+
+    void resetDirtyRect() {
+        mDirtyLeft = 0;
+        mDirtyTop = 0;
+        mDirtyRight = 0;
+        mDirtyBottom = 0;
+    }
+
+    /**
+     * Compares the buffer with a reference image of the same size, e.g. a golden frame.
+     *
+     * @param tolerance largest difference of a color channel still treated as equal
+     * @return number of pixels that differ
+     */
+    int countDifferentPixels(int[] expectedPixels, int tolerance) {
+        int count = 0;
+        for (int i = 0; i < mPixels.length; i++) {
+            int actual = mPixels[i];
+            int expected = expectedPixels[i];
+            if (actual == expected) {
+                continue;
+            }
+            for (int shift = 0; shift < 32; shift += 8) {
+                int delta = Math.abs(((actual >>> shift) & 0xFF) - ((expected >>> shift) & 0xFF));
+                if (delta > tolerance) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+}
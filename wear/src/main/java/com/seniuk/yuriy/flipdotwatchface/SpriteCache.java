@@ -0,0 +1,215 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.content.res.AssetManager;
+import android.os.Handler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoded sprites and their symbol atlas shared by all engines of the service, so the preview
+ * in the watch face picker and the active face don't load them twice. Sets are keyed by surface
+ * size and sprite mode and reference counted by the engines, a set no engine uses is kept for
+ * a quick switch back until it is pushed out by newer ones or memory is trimmed.
+ * <p>
+ * All calls are made on the main thread, the handlers passed in have to run on it too.
+ */
+final class SpriteCache {
+
+    private static final int MAX_UNUSED_ENTRIES = 1;
+
+    private static final class Entry {
+        FlipdotSprites mSprites;
+        SymbolAtlas mAtlas;
+        int mReferences;
+        boolean mEvicted;
+        //callers waiting for the sprites or for the atlas being built
+        List<FlipdotSprites.Callback> mSpritesRequests = new ArrayList<>();
+        List<SymbolAtlas.Callback> mAtlasRequests;
+    }
+
+    //access ordered, the least recently acquired set is first
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(4, 0.75f, true);
+    private final boolean mRecycleAtlas;
+
+    /**
+     * @param recycleAtlas false if the atlas of an evicted set may still be drawn by another
+     *                     thread, it is left to the GC then
+     */
+    SpriteCache(boolean recycleAtlas) {
+        mRecycleAtlas = recycleAtlas;
+    }
+
+    /**
+     * Delivers the sprites for the surface, they are loaded only if no engine has them.
+     * Every delivered set is referenced and has to be released, also the one the caller no
+     * longer wants. A failed load is delivered to the callback too.
+     */
+    void acquire(AssetManager assets, int width, int height, boolean tinted,
+                 Handler handler, final FlipdotSprites.Callback callback) {
+        final String key = width + "x" + height + (tinted ? "/tinted" : "");
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(key, entry);
+            final Entry loading = entry;
+            FlipdotSprites.loadAsync(assets, width, height, tinted, handler, new FlipdotSprites.Callback() {
+                @Override
+                public void onSpritesLoaded(FlipdotSprites sprites) {
+                    onLoaded(loading, sprites);
+                }
+
+                @Override
+                public void onSpritesFailed(IOException error) {
+                    onFailed(key, loading, error);
+                }
+            });
+        }
+        entry.mReferences++;
+
+        final FlipdotSprites sprites = entry.mSprites;
+        if (sprites == null) {
+            entry.mSpritesRequests.add(callback);
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSpritesLoaded(sprites);
+            }
+        });
+    }
+
+    private void onLoaded(Entry entry, FlipdotSprites sprites) {
+        entry.mSprites = sprites;
+        List<FlipdotSprites.Callback> requests = entry.mSpritesRequests;
+        entry.mSpritesRequests = null;
+        for (FlipdotSprites.Callback request : requests) {
+            request.onSpritesLoaded(sprites);
+        }
+    }
+
+    /**
+     * Drops the set, so the next acquire loads it again. The waiting callers hold no reference
+     * to it, they get no sprites to release.
+     */
+    private void onFailed(String key, Entry entry, IOException error) {
+        if (mEntries.get(key) == entry) {
+            mEntries.remove(key);
+        }
+        entry.mEvicted = true;
+        List<FlipdotSprites.Callback> requests = entry.mSpritesRequests;
+        entry.mSpritesRequests = null;
+        for (FlipdotSprites.Callback request : requests) {
+            request.onSpritesFailed(error);
+        }
+    }
+
+    void release(FlipdotSprites sprites) {
+        Entry entry = findEntry(sprites);
+        if (entry == null || entry.mReferences == 0) {
+            return;
+        }
+        entry.mReferences--;
+        if (entry.mReferences == 0) {
+            trim(MAX_UNUSED_ENTRIES);
+        }
+    }
+
+    /**
+     * Delivers the atlas of acquired sprites, it is built once per set and owned by the cache.
+     * The callback is not called if the atlas could not be built.
+     */
+    void getSymbolAtlas(FlipdotSprites sprites, int[] symbolMasks, int symbolColumns, int symbolRows,
+                        int blockSize, Handler handler, final SymbolAtlas.Callback callback) {
+        final Entry entry = findEntry(sprites);
+        if (entry == null) {
+            return;
+        }
+
+        final SymbolAtlas atlas = entry.mAtlas;
+        if (atlas != null) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onAtlasReady(atlas);
+                }
+            });
+            return;
+        }
+
+        boolean building = entry.mAtlasRequests != null;
+        if (!building) {
+            entry.mAtlasRequests = new ArrayList<>();
+        }
+        entry.mAtlasRequests.add(callback);
+        if (building) {
+            return;
+        }
+
+        SymbolAtlas.buildAsync(symbolMasks, symbolColumns, symbolRows, sprites, blockSize, handler,
+                new SymbolAtlas.Callback() {
+                    @Override
+                    public void onAtlasReady(SymbolAtlas atlas) {
+                        //set was evicted while building
+                        if (entry.mEvicted) {
+                            atlas.recycle();
+                            return;
+                        }
+                        entry.mAtlas = atlas;
+                        List<SymbolAtlas.Callback> requests = entry.mAtlasRequests;
+                        entry.mAtlasRequests = null;
+                        for (SymbolAtlas.Callback request : requests) {
+                            request.onAtlasReady(atlas);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Sets no engine uses are dropped on any memory pressure, the ones in use can't be rebuilt
+     * cheaper than they are kept.
+     */
+    void trimMemory() {
+        trim(0);
+    }
+
+    /**
+     * Evicts the least recently acquired unused sets beyond the given count. Sprites may still
+     * be read by an atlas being built, so only the atlas bitmap is recycled right away, if at all.
+     */
+    private void trim(int maxUnusedEntries) {
+        int unused = 0;
+        for (Entry entry : mEntries.values()) {
+            if (entry.mReferences == 0 && entry.mSprites != null) {
+                unused++;
+            }
+        }
+
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (unused > maxUnusedEntries && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.mReferences == 0 && entry.mSprites != null) {
+                iterator.remove();
+                entry.mEvicted = true;
+                if (entry.mAtlas != null && mRecycleAtlas) {
+                    entry.mAtlas.recycle();
+                }
+                unused--;
+            }
+        }
+    }
+
+    private Entry findEntry(FlipdotSprites sprites) {
+        for (Entry entry : mEntries.values()) {
+            if (entry.mSprites == sprites) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,145 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Every symbol pre-composited at every flip animation stage into a single bitmap, so a whole
+ * symbol is drawn with one blit. Symbols are laid out in columns, animation stages in rows.
+ * The atlas of tinted sprites is an alpha mask, it is drawn with the tint paint.
+ */
+final class SymbolAtlas {
+
+    interface Callback {
+        void onAtlasReady(SymbolAtlas atlas);
+    }
+
+    private final Bitmap mBitmap;
+    private final int mSymbolWidth;
+    private final int mSymbolHeight;
+
+    private SymbolAtlas(Bitmap bitmap, int symbolWidth, int symbolHeight) {
+        mBitmap = bitmap;
+        mSymbolWidth = symbolWidth;
+        mSymbolHeight = symbolHeight;
+    }
+
+    Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    void getSymbolRect(int symbol, int animationIndex, Rect rect) {
+        int left = symbol * mSymbolWidth;
+        int top = animationIndex * mSymbolHeight;
+        rect.set(left, top, left + mSymbolWidth, top + mSymbolHeight);
+    }
+
+    void recycle() {
+        mBitmap.recycle();
+    }
+
+    /**
+     * Builds the atlas on a background thread. The callback is posted to the given handler,
+     * it is not called if the atlas could not be built.
+     */
+    static void buildAsync(final int[] symbolMasks, final int symbolColumns, final int symbolRows,
+                           final FlipdotSprites sprites, final int blockSize,
+                           final Handler handler, final Callback callback) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                final SymbolAtlas atlas = build(symbolMasks, symbolColumns, symbolRows, sprites, blockSize);
+                if (atlas != null) {
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onAtlasReady(atlas);
+                        }
+                    });
+                }
+            }
+        }, "SymbolAtlasBuilder");
+        thread.start();
+    }
+
+    /**
+     * Composites the animation stages in parallel, one strip of all symbols per stage,
+     * and copies the strips into the atlas.
+     */
+    static SymbolAtlas build(final int[] symbolMasks, final int symbolColumns, int symbolRows,
+                             final FlipdotSprites sprites, final int blockSize) {
+        int stagesCount = sprites.getFlipdotsCount();
+        final Bitmap.Config config = sprites.isTinted() ? Bitmap.Config.ALPHA_8 : Bitmap.Config.ARGB_8888;
+        int symbolWidth = symbolColumns * blockSize;
+        final int symbolHeight = symbolRows * blockSize;
+
+        int workersCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), stagesCount));
+        ExecutorService executor = Executors.newFixedThreadPool(workersCount);
+        try {
+            List<Future<Bitmap>> strips = new ArrayList<>(stagesCount);
+            for (int i = 0; i < stagesCount; i++) {
+                final int animationIndex = i;
+                strips.add(executor.submit(new Callable<Bitmap>() {
+                    @Override
+                    public Bitmap call() {
+                        return buildStrip(symbolMasks, symbolColumns, symbolHeight, sprites, animationIndex,
+                                blockSize, config);
+                    }
+                }));
+            }
+
+            Bitmap bitmap = Bitmap.createBitmap(symbolWidth * symbolMasks.length, symbolHeight * stagesCount, config);
+            Canvas canvas = new Canvas(bitmap);
+            for (int i = 0; i < stagesCount; i++) {
+                Bitmap strip = strips.get(i).get();
+                canvas.drawBitmap(strip, 0, i * symbolHeight, null);
+                strip.recycle();
+            }
+
+            return new SymbolAtlas(bitmap, symbolWidth, symbolHeight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Bitmap buildStrip(int[] symbolMasks, int symbolColumns, int symbolHeight,
+                                     FlipdotSprites sprites, int animationIndex, int blockSize,
+                                     Bitmap.Config config) {
+        int symbolWidth = symbolColumns * blockSize;
+        Bitmap flipdotBitmap = sprites.getFlipdotBitmap(animationIndex);
+        Rect flipdotRect = new Rect();
+        sprites.getFlipdotRect(animationIndex, flipdotRect);
+        Rect cellRect = new Rect();
+
+        Bitmap strip = Bitmap.createBitmap(symbolWidth * symbolMasks.length, symbolHeight, config);
+        Canvas canvas = new Canvas(strip);
+        for (int symbol = 0; symbol < symbolMasks.length; symbol++) {
+            for (int dots = symbolMasks[symbol]; dots != 0; dots &= dots - 1) {
+                int bit = Integer.numberOfTrailingZeros(dots);
+                int left = symbol * symbolWidth + (bit % symbolColumns) * blockSize;
+                int top = (bit / symbolColumns) * blockSize;
+                cellRect.set(left, top, left + flipdotRect.width(), top + flipdotRect.height());
+                canvas.drawBitmap(flipdotBitmap, flipdotRect, cellRect, null);
+            }
+        }
+        return strip;
+    }
+}
@@ -0,0 +1,30 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+/**
+ * Turns the time of day into the four digits shown on the face, HH:MM.
+ */
+final class TimeDigits {
+
+    static final int DIGITS_COUNT = 4;
+
+    private TimeDigits() {
+    }
+
+    /**
+     * @return hours as shown on a 24 hour or a 12 hour clock, where midnight and noon are 12
+     */
+    static int toDisplayHours(int hourOfDay, boolean is24Hour) {
+        if (is24Hour) {
+            return hourOfDay;
+        }
+        int hours = hourOfDay % 12;
+        return hours == 0 ? 12 : hours;
+    }
+
+    static void fill(int hours, int minutes, int[] digits) {
+        digits[0] = hours / 10;
+        digits[1] = hours % 10;
+        digits[2] = minutes / 10;
+        digits[3] = minutes % 10;
+    }
+}
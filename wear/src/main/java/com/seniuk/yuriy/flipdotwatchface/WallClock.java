@@ -0,0 +1,183 @@
+package com.seniuk.yuriy.flipdotwatchface;
+
+import java.util.TimeZone;
+
+/**
+ * Wall clock time of day and date from epoch millis, without Calendar lookups or allocation.
+ * <p>
+ * The zone offset is cached until the next offset transition or until the zone is changed, the
+ * 12/24 hour format until it is changed. Transitions are looked for one day ahead.
+ */
+final class WallClock {
+
+    static final long MILLIS_PER_SECOND = 1000L;
+    static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+    static final int MINUTES_PER_HOUR = 60;
+
+    private TimeZone mTimeZone;
+    private boolean mIs24Hour;
+
+    //offset is valid in [mOffsetValidFromMs, mOffsetValidUntilMs)
+    private int mOffsetMs;
+    private long mOffsetValidFromMs = Long.MAX_VALUE;
+    private long mOffsetValidUntilMs = Long.MIN_VALUE;
+
+    //sampled by update()
+    private long mNowMs;
+    private int mMinuteOfDay;
+
+    //date of mEpochDay, calculated when the day changes
+    private long mEpochDay = Long.MIN_VALUE;
+    private int mYear;
+    private int mMonth;
+    private int mDayOfMonth;
+    private int mDayOfWeek;
+
+    WallClock(TimeZone timeZone, boolean is24Hour) {
+        mTimeZone = timeZone;
+        mIs24Hour = is24Hour;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mOffsetValidFromMs = Long.MAX_VALUE;
+        mOffsetValidUntilMs = Long.MIN_VALUE;
+    }
+
+    void set24Hour(boolean is24Hour) {
+        mIs24Hour = is24Hour;
+    }
+
+    boolean is24Hour() {
+        return mIs24Hour;
+    }
+
+    /**
+     * Takes the time of day at the given moment.
+     */
+    void update(long nowMs) {
+        if (nowMs < mOffsetValidFromMs || nowMs >= mOffsetValidUntilMs) {
+            updateOffset(nowMs);
+        }
+        mNowMs = nowMs;
+
+        long localMs = nowMs + mOffsetMs;
+        mMinuteOfDay = (int) (floorMod(localMs, MILLIS_PER_DAY) / MILLIS_PER_MINUTE);
+
+        long epochDay = (localMs - floorMod(localMs, MILLIS_PER_DAY)) / MILLIS_PER_DAY;
+        if (epochDay != mEpochDay) {
+            updateDate(epochDay);
+        }
+    }
+
+    /**
+     * Civil date of the day counted from 1970-01-01, proleptic Gregorian calendar.
+     */
+    private void updateDate(long epochDay) {
+        mEpochDay = epochDay;
+
+        long days = epochDay + 719468;
+        long era = (days >= 0 ? days : days - 146096) / 146097;
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        //months counted from March
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+
+        mDayOfMonth = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        mMonth = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        mYear = (int) (yearOfEra + era * 400 + (mMonth <= 2 ? 1 : 0));
+        //1970-01-01 was a Thursday
+        mDayOfWeek = (int) floorMod(epochDay + 4, 7);
+    }
+
+    int getMinuteOfDay() {
+        return mMinuteOfDay;
+    }
+
+    /**
+     * @return hours as shown on the clock, see {@link TimeDigits#toDisplayHours}
+     */
+    int getDisplayHours() {
+        return TimeDigits.toDisplayHours(mMinuteOfDay / MINUTES_PER_HOUR, mIs24Hour);
+    }
+
+    int getMinutes() {
+        return mMinuteOfDay % MINUTES_PER_HOUR;
+    }
+
+    /**
+     * @return seconds of the minute, the same in every zone
+     */
+    int getSeconds() {
+        return (int) (floorMod(mNowMs, MILLIS_PER_MINUTE) / MILLIS_PER_SECOND);
+    }
+
+    int getYear() {
+        return mYear;
+    }
+
+    /**
+     * @return month of the year, 1 for January
+     */
+    int getMonth() {
+        return mMonth;
+    }
+
+    int getDayOfMonth() {
+        return mDayOfMonth;
+    }
+
+    /**
+     * @return day of the week, 0 for Sunday
+     */
+    int getDayOfWeek() {
+        return mDayOfWeek;
+    }
+
+    /**
+     * @return epoch millis of the next minute boundary after the last update, zone offsets are
+     * whole minutes so the boundary is the same in local time
+     */
+    long getNextMinuteMs() {
+        return mNowMs - floorMod(mNowMs, MILLIS_PER_MINUTE) + MILLIS_PER_MINUTE;
+    }
+
+    /**
+     * @return epoch millis of the next second boundary after the last update
+     */
+    long getNextSecondMs() {
+        return mNowMs - floorMod(mNowMs, MILLIS_PER_SECOND) + MILLIS_PER_SECOND;
+    }
+
+    private void updateOffset(long nowMs) {
+        mOffsetMs = mTimeZone.getOffset(nowMs);
+        mOffsetValidFromMs = nowMs;
+
+        long aheadMs = nowMs + MILLIS_PER_DAY;
+        if (mTimeZone.getOffset(aheadMs) == mOffsetMs) {
+            mOffsetValidUntilMs = aheadMs;
+            return;
+        }
+
+        //transition is within the day, narrow it down to the minute
+        long fromMs = nowMs;
+        long toMs = aheadMs;
+        while (toMs - fromMs > MILLIS_PER_MINUTE) {
+            long middleMs = fromMs + (toMs - fromMs) / 2;
+            if (mTimeZone.getOffset(middleMs) == mOffsetMs) {
+                fromMs = middleMs;
+            } else {
+                toMs = middleMs;
+            }
+        }
+        //transitions fall on minute boundaries
+        mOffsetValidUntilMs = toMs - floorMod(toMs, MILLIS_PER_MINUTE);
+    }
+
+    private static long floorMod(long value, long divisor) {
+        long mod = value % divisor;
+        return mod < 0 ? mod + divisor : mod;
+    }
+}